@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+/**
+ * One measured operation. {@link BenchmarkRunner} calls {@link #run(int)}
+ * repeatedly from the given number of threads and divides the time and
+ * memory it takes by the number of operations.
+ */
+abstract class Benchmark {
+
+	private final String mName;
+	private final int mThreads;
+
+	Benchmark(String name) {
+		this(name, 1);
+	}
+
+	Benchmark(String name, int threads) {
+		mName = name;
+		mThreads = threads;
+	}
+
+	String getName() {
+		return mName;
+	}
+
+	int getThreads() {
+		return mThreads;
+	}
+
+	/**
+	 * Called once before the benchmark is warmed up.
+	 */
+	void setUp() throws Exception {
+	}
+
+	/**
+	 * Called once after the benchmark has been measured.
+	 */
+	void tearDown() throws Exception {
+	}
+
+	/**
+	 * Perform the operation a number of times. Called concurrently when
+	 * the benchmark has more than one thread.
+	 *
+	 * @param thread the index of the calling thread
+	 * @param ops the number of operations to perform
+	 * @return a value derived from the results, so that the calls cannot
+	 *         be optimized away
+	 */
+	abstract int run(int thread, int ops) throws Exception;
+
+}
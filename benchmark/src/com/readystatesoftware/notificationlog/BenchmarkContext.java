@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+/**
+ * Just enough of an application context for {@link Log#initialize(Context)}:
+ * in-memory preferences, a notification manager that drops everything and
+ * a package manager that reports {@link LogActivity} as declared, so the
+ * notification is built with all its actions.
+ */
+final class BenchmarkContext extends Context {
+
+	private final ApplicationInfo mInfo = new ApplicationInfo();
+	private final NotificationManager mNotificationManager = new NotificationManager();
+	private final Map<String, MemoryPreferences> mPrefs = new HashMap<String, MemoryPreferences>();
+	private final File mFilesDir;
+
+	BenchmarkContext(File filesDir) {
+		mFilesDir = filesDir;
+		mInfo.icon = 1;
+		mInfo.labelRes = 1;
+		mInfo.packageName = "com.readystatesoftware.notificationlog.benchmark";
+		mInfo.processName = mInfo.packageName;
+	}
+
+	@Override
+	public Object getSystemService(String name) {
+		return NOTIFICATION_SERVICE.equals(name) ? mNotificationManager : null;
+	}
+
+	@Override
+	public ApplicationInfo getApplicationInfo() {
+		return mInfo;
+	}
+
+	@Override
+	public String getString(int id) {
+		return "Benchmark";
+	}
+
+	@Override
+	public String getPackageName() {
+		return mInfo.packageName;
+	}
+
+	@Override
+	public File getFilesDir() {
+		return mFilesDir;
+	}
+
+	@Override
+	public File getCacheDir() {
+		return mFilesDir;
+	}
+
+	@Override
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		MemoryPreferences prefs = mPrefs.get(name);
+		if (prefs == null) {
+			prefs = new MemoryPreferences();
+			mPrefs.put(name, prefs);
+		}
+		return prefs;
+	}
+
+	@Override
+	public PackageManager getPackageManager() {
+		return new PackageManager() {
+			@Override
+			public List<ResolveInfo> queryIntentActivities(Intent intent, int flags) {
+				return Collections.singletonList(new ResolveInfo());
+			}
+		};
+	}
+
+	private static final class MemoryPreferences implements SharedPreferences {
+
+		private final HashMap<String, Object> mValues = new HashMap<String, Object>();
+
+		public synchronized int getInt(String key, int defValue) {
+			Object value = mValues.get(key);
+			return (value == null) ? defValue : (Integer) value;
+		}
+
+		public synchronized String getString(String key, String defValue) {
+			Object value = mValues.get(key);
+			return (value == null) ? defValue : (String) value;
+		}
+
+		public synchronized long getLong(String key, long defValue) {
+			Object value = mValues.get(key);
+			return (value == null) ? defValue : (Long) value;
+		}
+
+		public synchronized boolean getBoolean(String key, boolean defValue) {
+			Object value = mValues.get(key);
+			return (value == null) ? defValue : (Boolean) value;
+		}
+
+		public Editor edit() {
+			return new MemoryEditor();
+		}
+
+		private final class MemoryEditor implements Editor {
+
+			private final HashMap<String, Object> mChanges = new HashMap<String, Object>();
+			private final ArrayList<String> mRemovals = new ArrayList<String>();
+
+			public Editor putInt(String key, int value) {
+				mChanges.put(key, value);
+				return this;
+			}
+
+			public Editor putString(String key, String value) {
+				mChanges.put(key, value);
+				return this;
+			}
+
+			public Editor putLong(String key, long value) {
+				mChanges.put(key, value);
+				return this;
+			}
+
+			public Editor putBoolean(String key, boolean value) {
+				mChanges.put(key, value);
+				return this;
+			}
+
+			public Editor remove(String key) {
+				mRemovals.add(key);
+				return this;
+			}
+
+			public boolean commit() {
+				synchronized (MemoryPreferences.this) {
+					for (String key : mRemovals) {
+						mValues.remove(key);
+					}
+					mValues.putAll(mChanges);
+				}
+				return true;
+			}
+
+			public void apply() {
+				commit();
+			}
+
+		}
+
+	}
+
+}
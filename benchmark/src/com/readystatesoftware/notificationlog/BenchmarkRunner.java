@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the {@link LogBenchmarks} and prints the time and memory each
+ * operation takes. Every benchmark is first run for a number of warmup
+ * iterations, so the JIT has compiled the paths being measured, then for
+ * a number of measured iterations of roughly fixed length. Allocation is
+ * read from the per-thread counters of HotSpot compatible VMs.
+ *
+ * <p>The iteration counts and length can be changed with the
+ * <code>benchmark.warmup</code>, <code>benchmark.iterations</code> and
+ * <code>benchmark.millis</code> system properties. The first argument, if
+ * any, runs only the benchmarks whose name starts with it.
+ */
+final class BenchmarkRunner {
+
+	private static final int WARMUP_ITERATIONS = Integer.getInteger("benchmark.warmup", 5);
+	private static final int MEASURED_ITERATIONS = Integer.getInteger("benchmark.iterations", 10);
+	private static final long ITERATION_NANOS = Long.getLong("benchmark.millis", 200) * 1000000L;
+
+	private static final com.sun.management.ThreadMXBean sThreads = findThreadMXBean();
+
+	// written with every result so the measured calls have a visible effect
+	static volatile int sSink;
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		String prefix = (args.length > 0) ? args[0] : "";
+		System.out.println(String.format(Locale.US, "%-32s %7s %12s %10s %12s",
+				"Benchmark", "Threads", "ns/op", "stddev", "alloc B/op"));
+		for (Benchmark benchmark : LogBenchmarks.create()) {
+			if (!benchmark.getName().startsWith(prefix)) {
+				continue;
+			}
+			benchmark.setUp();
+			try {
+				print(benchmark, measure(benchmark));
+			} finally {
+				benchmark.tearDown();
+			}
+		}
+	}
+
+	/**
+	 * @return the ns/op of each measured iteration, followed by the
+	 *         allocated bytes per operation over all of them
+	 */
+	private static double[] measure(Benchmark benchmark) throws Exception {
+		int ops = calibrate(benchmark);
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iterate(benchmark, ops);
+		}
+		double[] results = new double[MEASURED_ITERATIONS + 1];
+		double bytes = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			double[] iteration = iterate(benchmark, ops);
+			results[i] = iteration[0];
+			bytes += iteration[1];
+		}
+		results[MEASURED_ITERATIONS] = bytes / MEASURED_ITERATIONS;
+		return results;
+	}
+
+	/**
+	 * Find the number of operations a thread performs in about one
+	 * iteration when it runs alone.
+	 */
+	private static int calibrate(Benchmark benchmark) throws Exception {
+		// the first call pays for class loading and initialization
+		sSink += benchmark.run(0, 1);
+		int ops = 1;
+		while (true) {
+			long start = System.nanoTime();
+			sSink += benchmark.run(0, ops);
+			long elapsed = System.nanoTime() - start;
+			if (elapsed >= ITERATION_NANOS / 10 || ops >= Integer.MAX_VALUE / 2) {
+				return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (long) ops * ITERATION_NANOS / Math.max(1, elapsed)));
+			}
+			ops *= 2;
+		}
+	}
+
+	/**
+	 * Run one iteration on all of the benchmark's threads at once.
+	 *
+	 * @return the mean ns/op of the threads and the allocated bytes per
+	 *         operation, or NaN if allocation cannot be measured
+	 */
+	private static double[] iterate(final Benchmark benchmark, final int ops) throws Exception {
+		final int threads = benchmark.getThreads();
+		final long[] nanos = new long[threads];
+		final long[] bytes = new long[threads];
+		final Exception[] failures = new Exception[threads];
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int index = i;
+			workers[i] = new Thread(benchmark.getName() + "-" + i) {
+				@Override
+				public void run() {
+					try {
+						ready.countDown();
+						start.await();
+						long allocated = allocatedBytes();
+						long time = System.nanoTime();
+						sSink += benchmark.run(index, ops);
+						nanos[index] = System.nanoTime() - time;
+						bytes[index] = allocatedBytes() - allocated;
+					} catch (Exception e) {
+						failures[index] = e;
+					}
+				}
+			};
+			workers[i].start();
+		}
+		ready.await();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		double totalNanos = 0;
+		double totalBytes = 0;
+		for (int i = 0; i < threads; i++) {
+			if (failures[i] != null) {
+				throw failures[i];
+			}
+			totalNanos += nanos[i];
+			totalBytes += bytes[i];
+		}
+		double opsTotal = (double) ops * threads;
+		return new double[] { totalNanos / opsTotal, (sThreads == null) ? Double.NaN : totalBytes / opsTotal };
+	}
+
+	private static void print(Benchmark benchmark, double[] results) {
+		int n = results.length - 1;
+		double mean = 0;
+		for (int i = 0; i < n; i++) {
+			mean += results[i];
+		}
+		mean /= n;
+		double variance = 0;
+		for (int i = 0; i < n; i++) {
+			variance += (results[i] - mean) * (results[i] - mean);
+		}
+		double deviation = (n > 1) ? Math.sqrt(variance / (n - 1)) : 0;
+		System.out.println(String.format(Locale.US, "%-32s %7d %12.1f %10.1f %12.1f",
+				benchmark.getName(), benchmark.getThreads(), mean, deviation, results[n]));
+	}
+
+	private static long allocatedBytes() {
+		return (sThreads == null) ? 0 : sThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean findThreadMXBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The benchmarked configurations. They share the {@link Log} singleton, so
+ * they are run in the order they are created: the uninitialized ones come
+ * first, and each initialized one sets up the buffer and filters it needs.
+ *
+ * <p>The notification publisher does not run on the stubbed handler
+ * thread, so a log call costs what it costs between two publishes: adding
+ * the entry and finding a publish already pending. The cost of a publish
+ * is measured separately by the <code>update</code> benchmarks.
+ */
+final class LogBenchmarks {
+
+	private static final String TAG = "Benchmark";
+	private static final String[] TAGS = {
+		"Network", "Database", "Ui", "Sync", "Cache", "Location", "Billing", "Push"
+	};
+
+	// distinct messages, so that entries are not collapsed as repeats
+	private static final int MESSAGE_MASK = 1023;
+	private static final String[] MESSAGES = new String[MESSAGE_MASK + 1];
+	static {
+		for (int i = 0; i < MESSAGES.length; i++) {
+			MESSAGES[i] = "request " + i + " completed in " + (i * 7 % 300) + "ms";
+		}
+	}
+
+	private static final int[] THREADS = { 2, 4, 8 };
+	private static final int[] BUFFER_SIZES = { 1000, 10000, 100000 };
+
+	private static final BenchmarkContext sContext = new BenchmarkContext(new File(System.getProperty("java.io.tmpdir")));
+
+	private LogBenchmarks() {
+	}
+
+	static List<Benchmark> create() {
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		// android.util.Log passthrough
+		benchmarks.add(new Benchmark("d.uninitialized") {
+			@Override
+			int run(int thread, int ops) {
+				int result = 0;
+				for (int i = 0; i < ops; i++) {
+					result += Log.d(TAG, MESSAGES[i & MESSAGE_MASK]);
+				}
+				return result;
+			}
+		});
+		benchmarks.add(new Benchmark("d.uninitialized.format") {
+			@Override
+			int run(int thread, int ops) {
+				int result = 0;
+				for (int i = 0; i < ops; i++) {
+					result += Log.d(TAG, "request {} completed", i);
+				}
+				return result;
+			}
+		});
+
+		// every call adds an entry to the buffer
+		benchmarks.add(new Logging("d.initialized", 1, null));
+		benchmarks.add(new Initialized("d.initialized.format", 1, null) {
+			@Override
+			int run(int thread, int ops) {
+				int result = 0;
+				for (int i = 0; i < ops; i++) {
+					result += Log.d(TAG, "request {} completed", i);
+				}
+				return result;
+			}
+		});
+		benchmarks.add(new Initialized("d.initialized.repeated", 1, null) {
+			@Override
+			int run(int thread, int ops) {
+				int result = 0;
+				for (int i = 0; i < ops; i++) {
+					result += Log.d(TAG, MESSAGES[0]);
+				}
+				return result;
+			}
+		});
+
+		// added to the buffer but hidden by the notification filter
+		benchmarks.add(new Logging("d.hidden", 1, null) {
+			@Override
+			void setUp() throws Exception {
+				super.setUp();
+				Log.setLogFilter(LogFilter.all().withMinLevel(Log.WARN));
+			}
+		});
+
+		// dropped by the source filter
+		benchmarks.add(new Logging("d.dropped", 1, null) {
+			@Override
+			void setUp() throws Exception {
+				super.setUp();
+				Log.setSourceFilter(Log.INFO);
+			}
+		});
+		benchmarks.add(new Initialized("d.dropped.format", 1, null) {
+			@Override
+			void setUp() throws Exception {
+				super.setUp();
+				Log.setSourceFilter(Log.INFO);
+			}
+
+			@Override
+			int run(int thread, int ops) {
+				int result = 0;
+				for (int i = 0; i < ops; i++) {
+					result += Log.d(TAG, "request {} completed", i);
+				}
+				return result;
+			}
+		});
+
+		// threads adding to the same buffer
+		for (int threads : THREADS) {
+			benchmarks.add(new Logging("d.contended", threads, null));
+		}
+
+		// a publish after each new entry, against the size of the buffer
+		for (int size : BUFFER_SIZES) {
+			benchmarks.add(new Publishing("update.append", size) {
+				@Override
+				int run(int thread, int ops) throws Exception {
+					int result = 0;
+					for (int i = 0; i < ops; i++) {
+						result += Log.w(TAGS[i & 7], MESSAGES[i & MESSAGE_MASK]);
+						updateNotification();
+					}
+					return result;
+				}
+			});
+		}
+
+		// a publish after each filter change, which walks the whole buffer
+		for (int size : BUFFER_SIZES) {
+			benchmarks.add(new Publishing("update.refilter", size) {
+				// equal filters, but a new one is compiled to a new predicate
+				private final LogFilter[] mFilters = {
+					LogFilter.all().withMinLevel(Log.WARN),
+					LogFilter.all().withMinLevel(Log.WARN)
+				};
+
+				@Override
+				int run(int thread, int ops) throws Exception {
+					for (int i = 0; i < ops; i++) {
+						Log.setLogFilter(mFilters[i & 1]);
+						updateNotification();
+					}
+					return Log.getBufferSize();
+				}
+			});
+		}
+
+		return benchmarks;
+	}
+
+	/**
+	 * A benchmark run with the log initialized and the buffer emptied.
+	 */
+	private abstract static class Initialized extends Benchmark {
+
+		private final BufferPolicy mPolicy;
+
+		/**
+		 * @param policy the buffer policy, or null for the default
+		 */
+		Initialized(String name, int threads, BufferPolicy policy) {
+			super((threads > 1) ? name + "." + threads : name, threads);
+			mPolicy = (policy == null) ? BufferPolicy.getDefault() : policy;
+		}
+
+		@Override
+		void setUp() throws Exception {
+			Log.initialize(sContext, 0, mPolicy);
+			Log.setNotificationsEnabled(true);
+			Log.clearSourceFilter();
+			Log.clearRateLimit();
+			Log.setLogFilter(LogFilter.all());
+			Log.clearLogbuffer();
+		}
+
+		@Override
+		void tearDown() throws Exception {
+			Log.clearSourceFilter();
+			Log.setLogFilter(LogFilter.all());
+		}
+
+	}
+
+	/**
+	 * Adds distinct DEBUG entries from each thread.
+	 */
+	private static class Logging extends Initialized {
+
+		Logging(String name, int threads, BufferPolicy policy) {
+			super(name, threads, policy);
+		}
+
+		@Override
+		int run(int thread, int ops) {
+			int result = 0;
+			int offset = thread * 257;
+			for (int i = 0; i < ops; i++) {
+				result += Log.d(TAG, MESSAGES[(i + offset) & MESSAGE_MASK]);
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Fills a buffer of the given size with a mix of levels and tags, and
+	 * shows only warnings and above in the notification.
+	 */
+	private abstract static class Publishing extends Initialized {
+
+		private static Object sLog;
+		private static Method sUpdateNotification;
+
+		Publishing(String name, int size) {
+			super(name + "." + size, 1, BufferPolicy.ofEntries(size));
+		}
+
+		@Override
+		void setUp() throws Exception {
+			super.setUp();
+			int size = Log.getBuffer().capacity();
+			for (int i = 0; i < size; i++) {
+				String tag = TAGS[i & 7];
+				String msg = MESSAGES[i & MESSAGE_MASK];
+				switch (i % 5) {
+				case 0: Log.v(tag, msg); break;
+				case 1: Log.d(tag, msg); break;
+				case 2: Log.i(tag, msg); break;
+				case 3: Log.w(tag, msg); break;
+				default: Log.e(tag, msg); break;
+				}
+			}
+			Log.setLogFilter(LogFilter.all().withMinLevel(Log.WARN));
+			updateNotification();
+		}
+
+		/**
+		 * Publish the notification on the calling thread, as the publisher
+		 * thread would.
+		 */
+		static void updateNotification() throws Exception {
+			if (sUpdateNotification == null) {
+				Field field = Log.class.getDeclaredField("sLog");
+				field.setAccessible(true);
+				sLog = field.get(null);
+				sUpdateNotification = Log.class.getDeclaredMethod("updateNotification");
+				sUpdateNotification.setAccessible(true);
+			}
+			Log.drainStaging();
+			try {
+				sUpdateNotification.invoke(sLog);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw (Error) cause;
+			}
+		}
+
+	}
+
+}
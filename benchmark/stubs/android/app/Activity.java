@@ -0,0 +1,20 @@
+package android.app;
+
+public class Activity extends android.content.Context {
+
+	protected void onCreate(android.os.Bundle b) { }
+	protected void onNewIntent(android.content.Intent i) { }
+	protected void onResume() { }
+	protected void onPause() { }
+	protected void onDestroy() { }
+	protected void onStart() { }
+	protected void onStop() { }
+	public boolean onCreateOptionsMenu(android.view.Menu m) { return true; }
+	public boolean onOptionsItemSelected(android.view.MenuItem i) { return true; }
+	public void setContentView(android.view.View v, android.view.ViewGroup.LayoutParams p) { }
+	public void setContentView(android.view.View v) { }
+	public void setTitle(CharSequence t) { }
+	public android.content.Intent getIntent() { return null; }
+	public void finish() { }
+	public void runOnUiThread(Runnable r) { }
+}
@@ -0,0 +1,22 @@
+package android.app;
+
+import android.content.DialogInterface;
+
+public class AlertDialog implements DialogInterface {
+
+	public void show() { }
+	public void dismiss() { }
+	public static class Builder {
+		public Builder(android.content.Context c) { }
+		public Builder setTitle(CharSequence t) { return this; }
+		public Builder setMessage(CharSequence t) { return this; }
+		public Builder setSingleChoiceItems(CharSequence[] i, int s, DialogInterface.OnClickListener l) { return this; }
+		public Builder setItems(CharSequence[] i, DialogInterface.OnClickListener l) { return this; }
+		public Builder setMultiChoiceItems(CharSequence[] i, boolean[] s, DialogInterface.OnMultiChoiceClickListener l) { return this; }
+		public Builder setView(android.view.View v) { return this; }
+		public Builder setPositiveButton(CharSequence t, DialogInterface.OnClickListener l) { return this; }
+		public Builder setNegativeButton(CharSequence t, DialogInterface.OnClickListener l) { return this; }
+		public Builder setNeutralButton(CharSequence t, DialogInterface.OnClickListener l) { return this; }
+		public AlertDialog create() { return null; }
+	}
+}
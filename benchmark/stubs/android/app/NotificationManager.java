@@ -0,0 +1,7 @@
+package android.app;
+
+public class NotificationManager {
+
+	public void notify(int id, Notification n) { }
+	public void cancel(int id) { }
+}
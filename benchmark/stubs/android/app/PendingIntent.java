@@ -0,0 +1,6 @@
+package android.app;
+
+public final class PendingIntent {
+
+	public static PendingIntent getActivity(android.content.Context c, int r, android.content.Intent i, int f) { return null; }
+}
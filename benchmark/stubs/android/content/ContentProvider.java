@@ -0,0 +1,19 @@
+package android.content;
+
+import java.io.FileNotFoundException;
+
+import android.net.Uri;
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+
+public abstract class ContentProvider {
+
+	public final Context getContext() { return null; }
+	public abstract boolean onCreate();
+	public abstract Cursor query(Uri u, String[] p, String s, String[] a, String o);
+	public abstract String getType(Uri u);
+	public abstract Uri insert(Uri u, ContentValues v);
+	public abstract int delete(Uri u, String s, String[] a);
+	public abstract int update(Uri u, ContentValues v, String s, String[] a);
+	public ParcelFileDescriptor openFile(Uri u, String m) throws FileNotFoundException { throw new FileNotFoundException(); }
+}
@@ -0,0 +1,15 @@
+package android.content;
+
+import android.net.Uri;
+import android.database.Cursor;
+import android.database.ContentObserver;
+
+public class ContentResolver {
+
+	public final Cursor query(Uri u, String[] p, String s, String[] a, String o) { return null; }
+	public final int update(Uri u, ContentValues v, String s, String[] a) { return 0; }
+	public final int delete(Uri u, String s, String[] a) { return 0; }
+	public void notifyChange(Uri u, ContentObserver o) { }
+	public final void registerContentObserver(Uri u, boolean d, ContentObserver o) { }
+	public final void unregisterContentObserver(ContentObserver o) { }
+}
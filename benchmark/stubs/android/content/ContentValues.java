@@ -0,0 +1,11 @@
+package android.content;
+
+public final class ContentValues {
+
+	public ContentValues() { }
+	public void put(String k, String v) { }
+	public void put(String k, Integer v) { }
+	public String getAsString(String k) { return null; }
+	public Integer getAsInteger(String k) { return null; }
+	public boolean containsKey(String k) { return false; }
+}
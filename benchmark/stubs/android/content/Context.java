@@ -0,0 +1,22 @@
+package android.content;
+
+import java.io.File;
+
+public abstract class Context {
+
+	public static final String NOTIFICATION_SERVICE = "n";
+	public static final int MODE_PRIVATE = 0;
+	public Object getSystemService(String s) { return null; }
+	public android.content.pm.ApplicationInfo getApplicationInfo() { return null; }
+	public String getString(int id) { return null; }
+	public SharedPreferences getSharedPreferences(String n, int m) { return null; }
+	public android.content.pm.PackageManager getPackageManager() { return null; }
+	public Context getApplicationContext() { return this; }
+	public File getFilesDir() { return null; }
+	public File getCacheDir() { return null; }
+	public File getExternalCacheDir() { return null; }
+	public String getPackageName() { return null; }
+	public ContentResolver getContentResolver() { return null; }
+	public void startActivity(Intent i) { }
+	public android.os.Looper getMainLooper() { return null; }
+}
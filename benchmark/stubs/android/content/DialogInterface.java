@@ -0,0 +1,13 @@
+package android.content;
+
+public interface DialogInterface {
+
+	void dismiss();
+	public interface OnClickListener {
+		void onClick(DialogInterface d, int w);
+	}
+
+	public interface OnMultiChoiceClickListener {
+		void onClick(DialogInterface d, int w, boolean c);
+	}
+}
@@ -0,0 +1,21 @@
+package android.content;
+
+public class Intent {
+
+	public Intent() { }
+	public Intent(String a) { }
+	public Intent(Context c, Class<?> k) { }
+	public Intent putExtra(String k, int v) { return this; }
+	public Intent putExtra(String k, String v) { return this; }
+	public Intent putExtra(String k, android.os.Parcelable v) { return this; }
+	public int getIntExtra(String k, int d) { return d; }
+	public Intent setClassName(String p, String c) { return this; }
+	public Intent setType(String t) { return this; }
+	public Intent addFlags(int f) { return this; }
+	public static Intent createChooser(Intent i, CharSequence t) { return i; }
+	public static final String ACTION_SEND = "s";
+	public static final String EXTRA_STREAM = "x";
+	public static final String EXTRA_SUBJECT = "y";
+	public static final int FLAG_ACTIVITY_NEW_TASK = 1;
+	public static final int FLAG_GRANT_READ_URI_PERMISSION = 2;
+}
@@ -0,0 +1,19 @@
+package android.content;
+
+public interface SharedPreferences {
+
+	int getInt(String k, int d);
+	String getString(String k, String d);
+	long getLong(String k, long d);
+	boolean getBoolean(String k, boolean d);
+	Editor edit();
+	public interface Editor {
+		Editor putInt(String k, int v);
+		Editor putString(String k, String v);
+		Editor putLong(String k, long v);
+		Editor putBoolean(String k, boolean v);
+		Editor remove(String k);
+		boolean commit();
+		void apply();
+	}
+}
@@ -0,0 +1,9 @@
+package android.content.pm;
+
+public class ApplicationInfo {
+
+	public int icon;
+	public int labelRes;
+	public String packageName;
+	public String processName;
+}
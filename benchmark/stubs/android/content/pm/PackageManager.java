@@ -0,0 +1,10 @@
+package android.content.pm;
+
+import java.util.List;
+
+public abstract class PackageManager {
+
+	public static final int MATCH_DEFAULT_ONLY = 0;
+	public List<ResolveInfo> queryIntentActivities(android.content.Intent i, int f) { return null; }
+	public ProviderInfo resolveContentProvider(String n, int f) { return null; }
+}
@@ -0,0 +1,7 @@
+package android.database;
+
+public abstract class ContentObserver {
+
+	public ContentObserver(android.os.Handler h) { }
+	public void onChange(boolean selfChange) { }
+}
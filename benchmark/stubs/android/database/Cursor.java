@@ -0,0 +1,14 @@
+package android.database;
+
+public interface Cursor {
+
+	int getCount();
+	boolean moveToNext();
+	boolean moveToFirst();
+	int getInt(int c);
+	long getLong(int c);
+	String getString(int c);
+	boolean isNull(int c);
+	int getColumnIndexOrThrow(String n);
+	void close();
+}
@@ -0,0 +1,17 @@
+package android.database;
+
+public class MatrixCursor implements Cursor {
+
+	public MatrixCursor(String[] c) { }
+	public MatrixCursor(String[] c, int n) { }
+	public void addRow(Object[] v) { }
+	public int getCount() { return 0; }
+	public boolean moveToNext() { return false; }
+	public boolean moveToFirst() { return false; }
+	public int getInt(int c) { return 0; }
+	public long getLong(int c) { return 0; }
+	public String getString(int c) { return null; }
+	public boolean isNull(int c) { return false; }
+	public int getColumnIndexOrThrow(String n) { return 0; }
+	public void close() { }
+}
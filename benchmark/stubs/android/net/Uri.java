@@ -0,0 +1,10 @@
+package android.net;
+
+public abstract class Uri implements android.os.Parcelable {
+
+	public static Uri fromFile(java.io.File f) { return null; }
+	public static Uri parse(String s) { return null; }
+	public abstract String getQueryParameter(String k);
+	public abstract java.util.List<String> getPathSegments();
+	public abstract String getLastPathSegment();
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+public abstract class AsyncTask<P, Q, R> {
+
+	protected abstract R doInBackground(P... p);
+	protected void onPostExecute(R r) { }
+	public final AsyncTask<P, Q, R> execute(P... p) { return this; }
+	public final boolean cancel(boolean b) { return true; }
+	public final boolean isCancelled() { return false; }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+public class Build {
+
+	public static class VERSION {
+		public static final int SDK_INT = 17;
+	}
+
+	public static class VERSION_CODES {
+		public static final int FROYO = 8, GINGERBREAD = 9, HONEYCOMB = 11, JELLY_BEAN = 16;
+	}
+}
@@ -0,0 +1,23 @@
+package android.os;
+
+public class Handler {
+
+	public Handler() { }
+	public Handler(Looper l) { }
+	public Handler(Looper l, Callback c) { }
+	public interface Callback {
+		boolean handleMessage(Message m);
+	}
+
+	public void handleMessage(Message m) { }
+	public boolean post(Runnable r) { return true; }
+	public boolean postDelayed(Runnable r, long d) { return true; }
+	public void removeCallbacks(Runnable r) { }
+	public boolean sendEmptyMessage(int w) { return true; }
+	public boolean sendEmptyMessageDelayed(int w, long d) { return true; }
+	public void removeMessages(int w) { }
+	public boolean hasMessages(int w) { return false; }
+	public final Looper getLooper() { return null; }
+	public Message obtainMessage(int w) { return null; }
+	public boolean sendMessage(Message m) { return true; }
+}
@@ -0,0 +1,9 @@
+package android.os;
+
+public class HandlerThread extends Thread {
+
+	public HandlerThread(String n) { }
+	public HandlerThread(String n, int p) { }
+	public Looper getLooper() { return null; }
+	public boolean quit() { return true; }
+}
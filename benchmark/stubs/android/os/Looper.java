@@ -0,0 +1,8 @@
+package android.os;
+
+public final class Looper {
+
+	public static Looper getMainLooper() { return null; }
+	public static Looper myLooper() { return null; }
+	public void quit() { }
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+public final class Message {
+
+	public int what;
+	public int arg1;
+	public Object obj;
+}
@@ -0,0 +1,11 @@
+package android.os;
+
+public final class Parcel {
+
+	public int readInt() { return 0; }
+	public long readLong() { return 0; }
+	public String readString() { return null; }
+	public void writeInt(int i) { }
+	public void writeLong(long l) { }
+	public void writeString(String s) { }
+}
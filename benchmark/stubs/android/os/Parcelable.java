@@ -0,0 +1,11 @@
+package android.os;
+
+public interface Parcelable {
+
+	int describeContents();
+	void writeToParcel(Parcel d, int f);
+	public interface Creator<T> {
+		T createFromParcel(Parcel p);
+		T[] newArray(int s);
+	}
+}
@@ -0,0 +1,6 @@
+package android.os;
+
+public final class SystemClock {
+	public static long uptimeMillis() { return System.nanoTime() / 1000000; }
+	public static long elapsedRealtime() { return System.nanoTime() / 1000000; }
+}
@@ -0,0 +1,35 @@
+package android.support.v4.app;
+
+import java.util.ArrayList;
+
+public class NotificationCompat {
+
+	/**
+	 * Keeps what it is given, like the support library, so building a
+	 * notification costs roughly what it would on a device.
+	 */
+	public static class Style {
+		final ArrayList<CharSequence> mTexts = new ArrayList<CharSequence>();
+	}
+
+	public static class Builder {
+		CharSequence mText;
+		Style mStyle;
+		public Builder(android.content.Context c) { }
+		public Builder setSmallIcon(int i) { return this; }
+		public Builder setContentTitle(CharSequence c) { return this; }
+		public Builder setContentText(CharSequence c) { mText = c; return this; }
+		public Builder addAction(int i, CharSequence t, android.app.PendingIntent p) { return this; }
+		public Builder setContentIntent(android.app.PendingIntent p) { return this; }
+		public Builder setNumber(int n) { return this; }
+		public Builder setStyle(Style s) { mStyle = s; return this; }
+		public Builder setOnlyAlertOnce(boolean b) { return this; }
+		public Builder setWhen(long w) { return this; }
+		public android.app.Notification build() { return new android.app.Notification(); }
+	}
+
+	public static class InboxStyle extends Style {
+		public InboxStyle addLine(CharSequence c) { mTexts.add(c); return this; }
+		public InboxStyle setSummaryText(CharSequence c) { return this; }
+	}
+}
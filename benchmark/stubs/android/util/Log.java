@@ -0,0 +1,39 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Discards all output. isLoggable() answers like a device with the default
+ * log level of INFO, so DEBUG and VERBOSE calls take the same paths as in a
+ * release build.
+ */
+public final class Log {
+
+	public static final int VERBOSE = 2, DEBUG = 3, INFO = 4, WARN = 5, ERROR = 6, ASSERT = 7;
+	public static int v(String t, String m) { return println(VERBOSE, t, m); }
+	public static int v(String t, String m, Throwable e) { return println(VERBOSE, t, m); }
+	public static int d(String t, String m) { return println(DEBUG, t, m); }
+	public static int d(String t, String m, Throwable e) { return println(DEBUG, t, m); }
+	public static int i(String t, String m) { return println(INFO, t, m); }
+	public static int i(String t, String m, Throwable e) { return println(INFO, t, m); }
+	public static int w(String t, String m) { return println(WARN, t, m); }
+	public static int w(String t, String m, Throwable e) { return println(WARN, t, m); }
+	public static int w(String t, Throwable e) { return println(WARN, t, null); }
+	public static int e(String t, String m) { return println(ERROR, t, m); }
+	public static int e(String t, String m, Throwable e) { return println(ERROR, t, m); }
+	public static int wtf(String t, String m) { return println(ASSERT, t, m); }
+	public static int wtf(String t, String m, Throwable e) { return println(ASSERT, t, m); }
+	public static int wtf(String t, Throwable e) { return println(ASSERT, t, null); }
+	public static boolean isLoggable(String t, int l) { return l >= INFO; }
+	public static int println(int p, String t, String m) { return (m == null) ? 0 : m.length(); }
+
+	public static String getStackTraceString(Throwable t) {
+		if (t == null) {
+			return "";
+		}
+		StringWriter sw = new StringWriter();
+		t.printStackTrace(new PrintWriter(sw));
+		return sw.toString();
+	}
+}
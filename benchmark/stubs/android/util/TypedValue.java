@@ -0,0 +1,6 @@
+package android.util;
+
+public class TypedValue {
+
+	public static final int COMPLEX_UNIT_SP = 2, COMPLEX_UNIT_DIP = 1;
+}
@@ -0,0 +1,6 @@
+package android.view;
+
+public interface Menu {
+
+	MenuItem add(int g, int i, int o, CharSequence t);
+}
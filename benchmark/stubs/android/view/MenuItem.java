@@ -0,0 +1,9 @@
+package android.view;
+
+public interface MenuItem {
+
+	int SHOW_AS_ACTION_NEVER = 0;
+	int SHOW_AS_ACTION_IF_ROOM = 1;
+	int getItemId();
+	void setShowAsAction(int a);
+}
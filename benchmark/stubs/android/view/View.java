@@ -0,0 +1,14 @@
+package android.view;
+
+public class View {
+
+	public View(android.content.Context c) { }
+	public void setPadding(int l, int t, int r, int b) { }
+	public android.content.Context getContext() { return null; }
+	public void setTag(Object o) { }
+	public Object getTag() { return null; }
+	public boolean post(Runnable r) { return true; }
+	public boolean postDelayed(Runnable r, long d) { return true; }
+	public void removeCallbacks(Runnable r) { }
+	public void setBackgroundColor(int c) { }
+}
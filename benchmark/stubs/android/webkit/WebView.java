@@ -0,0 +1,9 @@
+package android.webkit;
+
+public class WebView extends android.view.View {
+
+	public WebView(android.content.Context c) { super(c); }
+	public void setWebViewClient(WebViewClient c) { }
+	public void loadDataWithBaseURL(String a, String b, String c, String d, String e) { }
+	public boolean pageDown(boolean b) { return true; }
+}
@@ -0,0 +1,6 @@
+package android.webkit;
+
+public class WebViewClient {
+
+	public void onPageFinished(WebView v, String u) { }
+}
@@ -0,0 +1,12 @@
+package android.widget;
+
+public abstract class AbsListView extends AdapterView<ListAdapter> {
+
+	public static final int TRANSCRIPT_MODE_DISABLED = 0, TRANSCRIPT_MODE_NORMAL = 1, TRANSCRIPT_MODE_ALWAYS_SCROLL = 2;
+	public AbsListView(android.content.Context c) { super(c); }
+	public void setTranscriptMode(int m) { }
+	public void setStackFromBottom(boolean b) { }
+	public void setFastScrollEnabled(boolean b) { }
+	public void setSmoothScrollbarEnabled(boolean b) { }
+	public void setCacheColorHint(int c) { }
+}
@@ -0,0 +1,15 @@
+package android.widget;
+
+public abstract class AdapterView<T extends Adapter> extends android.view.ViewGroup {
+
+	public AdapterView(android.content.Context c) { super(c); }
+	public interface OnItemClickListener {
+		void onItemClick(AdapterView<?> p, android.view.View v, int pos, long id);
+	}
+
+	public void setOnItemClickListener(OnItemClickListener l) { }
+	public void setSelection(int p) { }
+	public int getLastVisiblePosition() { return 0; }
+	public int getFirstVisiblePosition() { return 0; }
+	public int getCount() { return 0; }
+}
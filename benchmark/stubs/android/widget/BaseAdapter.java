@@ -0,0 +1,13 @@
+package android.widget;
+
+public abstract class BaseAdapter implements ListAdapter {
+
+	public abstract int getCount();
+	public abstract Object getItem(int p);
+	public abstract long getItemId(int p);
+	public abstract android.view.View getView(int p, android.view.View c, android.view.ViewGroup g);
+	public void notifyDataSetChanged() { }
+	public boolean hasStableIds() { return false; }
+	public int getViewTypeCount() { return 1; }
+	public int getItemViewType(int p) { return 0; }
+}
@@ -0,0 +1,8 @@
+package android.widget;
+
+public class EditText extends TextView {
+
+	public EditText(android.content.Context c) { super(c); }
+	public void setHint(CharSequence h) { }
+	public android.text.Editable getText() { return null; }
+}
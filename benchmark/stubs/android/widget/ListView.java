@@ -0,0 +1,8 @@
+package android.widget;
+
+public class ListView extends AbsListView {
+
+	public ListView(android.content.Context c) { super(c); }
+	public void setAdapter(ListAdapter a) { }
+	public void setDividerHeight(int h) { }
+}
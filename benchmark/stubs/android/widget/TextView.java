@@ -0,0 +1,13 @@
+package android.widget;
+
+public class TextView extends android.view.View {
+
+	public TextView(android.content.Context c) { super(c); }
+	public void setText(CharSequence s) { }
+	public void setTextColor(int c) { }
+	public void setTypeface(android.graphics.Typeface t) { }
+	public void setTextSize(int u, float s) { }
+	public CharSequence getText() { return null; }
+	public void setSingleLine(boolean b) { }
+	public void setTextIsSelectable(boolean b) { }
+}
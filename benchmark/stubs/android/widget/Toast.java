@@ -0,0 +1,12 @@
+package android.widget;
+
+public class Toast {
+
+	public static final int LENGTH_SHORT = 0;
+	public static final int LENGTH_LONG = 1;
+	public Toast(android.content.Context c) { }
+	public static Toast makeText(android.content.Context c, CharSequence t, int d) { return new Toast(c); }
+	public void show() { }
+	public void cancel() { }
+	public void setText(CharSequence s) { }
+}
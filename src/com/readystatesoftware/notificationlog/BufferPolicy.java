@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+/**
+ * Describes how large the log buffer may grow and which entries it keeps
+ * when it is full. Pass one to {@link Log#initialize(android.content.Context, int, BufferPolicy)}.
+ *
+ * <p>The buffer is limited either by a number of entries or by an approximate
+ * number of bytes, and always evicts the oldest entries first. Reserves can
+ * be added to keep the most recent entries of a level regardless, e.g.
+ * <pre>BufferPolicy.ofBytes(512 * 1024).reserve(Log.ERROR, 200)</pre>
+ * keeps the last 200 errors even when a flood of verbose output has pushed
+ * them out of the main buffer.
+ */
+public final class BufferPolicy {
+
+	static final int DEFAULT_ENTRIES = 1000;
+
+	// estimated cost of one slot in the column arrays and of an empty String
+	static final int SLOT_BYTES = 1 + 8 + 8 + 4 + 4 + 4 + 4 + 8 + 4;
+	static final int STRING_BYTES = 40;
+	// a rough allowance for a kept exception and its captured stack
+	static final int THROWABLE_BYTES = 512;
+
+	private static final int MAX_SLOTS = 1 << 20;
+	private static final int MIN_SLOTS = 16;
+	private static final int MAX_LEVEL = 127;
+
+	private final int mMaxEntries;
+	private final long mMaxBytes;
+	private int[] mReserves = new int[0];
+
+	private BufferPolicy(int maxEntries, long maxBytes) {
+		mMaxEntries = maxEntries;
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * @param maxEntries the number of entries to keep
+	 */
+	public static BufferPolicy ofEntries(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		return new BufferPolicy(maxEntries, -1);
+	}
+
+	/**
+	 * @param maxBytes the approximate amount of memory the buffer may use,
+	 *        including the message strings
+	 */
+	public static BufferPolicy ofBytes(long maxBytes) {
+		if (maxBytes < MIN_SLOTS * 2L * (SLOT_BYTES + STRING_BYTES)) {
+			throw new IllegalArgumentException("maxBytes is too small");
+		}
+		int slots = (int) Math.min(MAX_SLOTS, maxBytes / (2 * (SLOT_BYTES + STRING_BYTES)));
+		return new BufferPolicy(slots, maxBytes);
+	}
+
+	static BufferPolicy getDefault() {
+		return ofEntries(DEFAULT_ENTRIES);
+	}
+
+	/**
+	 * Keep the most recent entries of a level even after they have been
+	 * evicted from the main buffer.
+	 *
+	 * @param level the level, e.g. {@link Log#ERROR}
+	 * @param count the number of entries of that level to keep
+	 * @return this policy
+	 */
+	public BufferPolicy reserve(int level, int count) {
+		if (level < 0 || level > MAX_LEVEL) {
+			throw new IllegalArgumentException("invalid level " + level);
+		}
+		if (level >= mReserves.length) {
+			int[] grown = new int[level + 1];
+			System.arraycopy(mReserves, 0, grown, 0, mReserves.length);
+			mReserves = grown;
+		}
+		mReserves[level] = Math.max(0, count);
+		return this;
+	}
+
+	/**
+	 * @return the number of slots in the main buffer
+	 */
+	int getSlots() {
+		return mMaxEntries;
+	}
+
+	/**
+	 * @return the byte budget, or -1 if the buffer is only limited by entries
+	 */
+	long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+	/**
+	 * @return the number of entries reserved for the level
+	 */
+	int getReserve(int level) {
+		return (level >= 0 && level < mReserves.length) ? mReserves[level] : 0;
+	}
+
+	int getMaxReservedLevel() {
+		return mReserves.length - 1;
+	}
+
+}
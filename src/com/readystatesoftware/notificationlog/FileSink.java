@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Appends the entries it receives to a file, in one of the formats of
+ * {@link Log#exportLogBuffer(File, int)}. The file is opened on the first
+ * write and kept open until the sink is removed.
+ */
+public final class FileSink extends LogSink {
+
+	static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private final File mFile;
+	private final int mFormat;
+	private FileOutputStream mOut;
+	private LogExporter mExporter;
+
+	/**
+	 * @param file the file to append to
+	 * @param format one of {@link Log#EXPORT_TEXT}, {@link Log#EXPORT_JSON}
+	 *        or {@link Log#EXPORT_BINARY}
+	 */
+	public FileSink(File file, int format) {
+		if (format != Log.EXPORT_TEXT && format != Log.EXPORT_JSON && format != Log.EXPORT_BINARY) {
+			throw new IllegalArgumentException("unknown format " + format);
+		}
+		mFile = file;
+		mFormat = format;
+		setFlushInterval(DEFAULT_FLUSH_INTERVAL);
+	}
+
+	@Override
+	protected void write(List<LogEntry> entries) throws IOException {
+		if (mExporter == null) {
+			boolean empty = mFile.length() == 0;
+			mOut = new FileOutputStream(mFile, true);
+			// a binary file only has a header at its start
+			mExporter = new LogExporter(mOut.getChannel(), mFormat, empty);
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			mExporter.write(entries.get(i));
+		}
+	}
+
+	@Override
+	protected void flush() throws IOException {
+		if (mExporter != null) {
+			mExporter.finish();
+		}
+	}
+
+	@Override
+	protected void close() {
+		if (mOut != null) {
+			try {
+				mOut.close();
+			} catch (IOException e) {
+				// nothing more can be written anyway
+			}
+			mOut = null;
+			mExporter = null;
+		}
+	}
+
+}
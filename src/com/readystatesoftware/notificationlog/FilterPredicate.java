@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.BitSet;
+
+/**
+ * A {@link LogFilter} compiled for matching buffered entries. Tags are
+ * resolved to dictionary ids once, so checking an entry is a comparison and
+ * at most two bit lookups; the message is only read when the filter has a
+ * text to match. Instances are immutable and may be shared between threads.
+ */
+final class FilterPredicate {
+
+	private final int mMinLevel;
+	private final BitSet mTagIds;
+	private final BitSet mExcludedTagIds;
+	private final SearchQuery mText;
+
+	FilterPredicate(int minLevel, String[] tags, String[] excludedTags, String text) {
+		mMinLevel = minLevel;
+		mTagIds = toTagIds(tags);
+		mExcludedTagIds = toTagIds(excludedTags);
+		mText = (text == null) ? null : SearchQuery.substring(text);
+	}
+
+	/**
+	 * Check the level and tag of an entry, but not its message.
+	 */
+	boolean accept(int level, int tagId) {
+		return level >= mMinLevel
+				&& (mTagIds == null || mTagIds.get(tagId))
+				&& (mExcludedTagIds == null || !mExcludedTagIds.get(tagId));
+	}
+
+	boolean accept(int level, int tagId, String text) {
+		return accept(level, tagId) && (mText == null || mText.matches(text));
+	}
+
+	/**
+	 * Check a buffered entry whose level and tag have already been read,
+	 * reading its message only if needed.
+	 */
+	boolean accept(int level, int tagId, LogBuffer buffer, long seq) {
+		return accept(level, tagId) && (mText == null || mText.matches(buffer.textOf(seq)));
+	}
+
+	private static BitSet toTagIds(String[] tags) {
+		if (tags.length == 0) {
+			return null;
+		}
+		BitSet ids = new BitSet();
+		for (String tag : tags) {
+			ids.set(TagDictionary.intern(tag));
+		}
+		return ids;
+	}
+
+}
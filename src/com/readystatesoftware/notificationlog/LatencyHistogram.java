@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Each power of two is
+ * split into four buckets, so a recorded value is known to within 25%
+ * from a fixed 2KB of counters, whatever the range of the values.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong mTotal = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		mBuckets.incrementAndGet(bucketOf(nanos));
+		mTotal.addAndGet(nanos);
+		long max;
+		do {
+			max = mMax.get();
+		} while (nanos > max && !mMax.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * Copy the counters into a {@link LogStats.Latency}. Values recorded
+	 * meanwhile may or may not be included.
+	 */
+	LogStats.Latency snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = mBuckets.get(i);
+		}
+		return new LogStats.Latency(counts, mTotal.get(), mMax.get());
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			mBuckets.set(i, 0);
+		}
+		mTotal.set(0);
+		mMax.set(0);
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return the largest value that falls into the bucket
+	 */
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_BITS) - 1;
+		long lower = (long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.List;
+
+/**
+ * Reads the log straight from {@link Log} in the same process.
+ */
+final class LocalLogSource extends LogSource {
+
+	private Runnable mListener;
+
+	@Override
+	void start(Runnable listener) {
+		mListener = listener;
+		Log.addListener(listener);
+	}
+
+	@Override
+	void stop() {
+		if (mListener != null) {
+			Log.removeListener(mListener);
+			mListener = null;
+		}
+	}
+
+	@Override
+	void release() {
+		stop();
+	}
+
+	@Override
+	LogBuffer getBuffer() {
+		return Log.getBuffer();
+	}
+
+	@Override
+	LogFilter getFilter() {
+		return Log.getLogFilter();
+	}
+
+	@Override
+	void setFilter(LogFilter filter) {
+		Log.setLogFilter(filter);
+	}
+
+	@Override
+	void clear() {
+		Log.clearLogbuffer();
+	}
+
+	@Override
+	List<LogEntry> getPreviousSession() {
+		return Log.getPreviousSessionBuffer();
+	}
+
+	@Override
+	String getStats() {
+		return Log.getStats().toString();
+	}
+
+	@Override
+	SearchIndex.Results search(LogBuffer buffer, SearchQuery query) {
+		return Log.search(buffer, query);
+	}
+
+}
@@ -17,9 +17,14 @@
 
 package com.readystatesoftware.notificationlog;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.readystatesoftware.notificationlog.utils.SharedPreferencesCompat;
 
@@ -27,15 +32,17 @@ import android.annotation.TargetApi;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Process;
 import android.support.v4.app.NotificationCompat;
-import android.widget.Toast;
 
 /**
  * API for sending log output.
@@ -63,7 +70,12 @@ import android.widget.Toast;
  * itself, the buffer, and the String object.  Realistically, there is also
  * another buffer allocation and copy, and even more pressure on the gc.
  * That means that if your log message is filtered out, you might be doing
- * significant work and incurring significant overhead.
+ * significant work and incurring significant overhead. Use the format
+ * overloads instead, e.g.
+ * <pre>Log.v(TAG, "index={}", i);</pre>
+ * which format the message into a reusable per-thread buffer, without
+ * boxing primitive arguments. The message is always built, as it is always
+ * sent to the system log.
  */
 public final class Log {
 
@@ -99,20 +111,54 @@ public final class Log {
     
     public static final int WTF = 99;
     
-    private static final int MAX_BUFFER_SIZE = 1000;
+    /**
+     * Export format for {@link #exportLogBuffer(File, int)}: one line of 
+     * text per entry, as shown in {@link LogActivity}.
+     */
+    public static final int EXPORT_TEXT = 0;
+    
+    /**
+     * Export format for {@link #exportLogBuffer(File, int)}: one JSON object 
+     * per line.
+     */
+    public static final int EXPORT_JSON = 1;
+    
+    /**
+     * Export format for {@link #exportLogBuffer(File, int)}: compact binary 
+     * records in the field order of {@link LogEntry#writeToParcel}.
+     */
+    public static final int EXPORT_BINARY = 2;
+    
+    private static final long DEFAULT_NOTIFICATION_INTERVAL = 250;
     private static final int NOTIFICATION_ID = 1138;
     private static final String PREFS_NAME = "preferences_notificationlog";
     private static final String PREF_LEVEL = "level";
     private static final String PREF_FILTER = "filter";
+    private static final String PREF_FILTER_EXPRESSION = "filter_expression";
+    private static final String JOURNAL_FILE = "notificationlog.journal";
+    private static final String TAG = "NotificationLog";
+    
+    private static final int STATE_UNINITIALIZED = 0;
+    private static final int STATE_INITIALIZING = 1;
+    private static final int STATE_INITIALIZED = 2;
     
     private static final Log sLog = new Log();
+    private static final AtomicInteger sState = new AtomicInteger(STATE_UNINITIALIZED);
+    private static final PreInitQueue sPreInitQueue = new PreInitQueue(BufferPolicy.DEFAULT_ENTRIES);
     private static boolean sNotificationsEnabled = true;
     private static boolean sToastsEnabled = false;
+    private static volatile long sNotificationInterval = DEFAULT_NOTIFICATION_INTERVAL;
+    private static volatile SourceFilter sSourceFilter;
+    private static volatile RateLimiter sRateLimiter;
+    private static volatile boolean sJournalEnabled = false;
+    private static volatile boolean sLogcatEnabled = false;
+    private static volatile Runnable[] sListeners = new Runnable[0];
+    private static volatile ContentResolver sProviderResolver;
+    private static volatile Uri sProviderUri;
+    private static String sProcessName;
+    private static boolean sCrashFlushInstalled;
     
     private Context mContext;
-    private Toast mLogToast0;
-    private Toast mLogToast1;
-    private boolean mLastToast0 = true;
     private Notification mNotification;
     private NotificationManager mNotificationManager;
     private SharedPreferences mPrefs;
@@ -123,11 +169,29 @@ public final class Log {
     private PendingIntent mLevelIntent;
     private PendingIntent mClearIntent;
     private boolean mActivityIntegrationAvailable;
+    private NotificationPublisher mPublisher;
+    private final NotificationInbox mInbox = new NotificationInbox();
+    private volatile SearchIndex mSearchIndex;
+    private final LogMetrics mMetrics = new LogMetrics();
+    private final SinkDispatcher mDispatcher = new SinkDispatcher();
+    private final StagingDrainer mStaging = new StagingDrainer(new StagingDrainer.Target() {
+    	public void append(int level, long time, int tagId, String text, Throwable tr) {
+    		appendToEntryBuffer(level, time, tagId, text, tr);
+    	}
+    	public void drained() {
+    		notifyListeners();
+    		mPublisher.requestPublish();
+    	}
+    });
+    private final LogSink mNotificationSink = new NotificationSink();
+    private LogSink mToastSink;
     
-    private int mLevel;
-    private HashSet<String> mFilterOptions = new HashSet<String>();
-    private String mFilter;
-    private ArrayList<LogEntry> mEntries = new ArrayList<LogEntry>(); 
+    private volatile LogFilter mLogFilter = LogFilter.all();
+    private BufferPolicy mPolicy = BufferPolicy.getDefault();
+    private volatile LogBuffer mEntries = new LogBuffer(mPolicy);
+    private volatile LogJournal mJournal;
+    private volatile LogcatReader mLogcat;
+    private ArrayList<LogEntry> mPreviousSession = new ArrayList<LogEntry>();
     
     private Log() {
     }
@@ -163,17 +227,92 @@ public final class Log {
      * @param icon drawable resource identifier to use as the notification icon
      */
     public static void initialize(Context context, int icon) {
+    	initialize(context, icon, null);
+    }
+    
+    /**
+     * Initialize the NotificationLog so that subsequent calls to the various 
+     * Log methods will send output to a notification in addition to the system 
+     * log. If you do not call this method, this class behaves exactly as 
+     * android.util.Log.
+     * 
+     * @param context your application context
+     * @param icon drawable resource identifier to use as the notification icon
+     * @param policy the size and eviction policy of the log buffer, or null 
+     *        to keep the last 1000 entries
+     */
+    public static void initialize(Context context, int icon, BufferPolicy policy) {
+    	synchronized (sLog) {
+    		setUp(context, icon, policy);
+    	}
+    	sState.set(STATE_INITIALIZED);
+    	// apply settings changed while the setup was running, which only 
+    	// take effect once initialized
+    	sLog.mPublisher.setInterval(sNotificationInterval);
+    	sLog.syncJournal();
+    	sLog.syncLogcat();
+    	drainPreInitQueue();
+    }
+    
+    /**
+     * Like {@link #initialize(Context)}, but returns straight away and does 
+     * the setup on a background thread, to keep it out of the app's startup 
+     * time. Log calls made in the meantime are queued, up to the last 1000, 
+     * and added to the buffer once the setup is done. Calls that change the 
+     * filter or clear the buffer have no effect until then; the journal, 
+     * logcat and notification interval settings are applied when it is done.
+     * 
+     * @param context your application context
+     */
+    public static void initializeAsync(Context context) {
+    	initializeAsync(context, 0, null);
+    }
+    
+    /**
+     * Like {@link #initialize(Context, int, BufferPolicy)}, but does the setup 
+     * on a background thread. See {@link #initializeAsync(Context)}.
+     * 
+     * @param context your application context
+     * @param icon drawable resource identifier to use as the notification icon
+     * @param policy the size and eviction policy of the log buffer, or null 
+     *        to keep the last 1000 entries
+     */
+    public static void initializeAsync(final Context context, final int icon, final BufferPolicy policy) {
+    	sState.compareAndSet(STATE_UNINITIALIZED, STATE_INITIALIZING);
+    	new Thread(new Runnable() {
+    		public void run() {
+    			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    			initialize(context, icon, policy);
+    		}
+    	}, "NotificationLogInit").start();
+    }
+    
+    private static void setUp(Context context, int icon, BufferPolicy policy) {
+    	if (policy != null && policy != sLog.mPolicy) {
+    		sLog.mPolicy = policy;
+    		sLog.mMetrics.retire(sLog.mEntries);
+    		sLog.mEntries = new LogBuffer(policy);
+    	}
+    	if (sLog.mPublisher == null) {
+    		sLog.mPublisher = new NotificationPublisher(new Runnable() {
+    			public void run() {
+    				sLog.publish();
+    			}
+    		}, sNotificationInterval);
+    	}
+    	sLog.mStaging.start();
+    	if (!sCrashFlushInstalled) {
+    		Thread.setDefaultUncaughtExceptionHandler(new CrashFlush(Thread.getDefaultUncaughtExceptionHandler()));
+    		sCrashFlushInstalled = true;
+    	}
     	sLog.mContext = context;
-    	sLog.mLogToast0 = new Toast(context);
-    	sLog.mLogToast1 = new Toast(context);
     	sLog.mIcon = (icon == 0) ? context.getApplicationInfo().icon : icon;
     	sLog.mLabel = context.getString(context.getApplicationInfo().labelRes);
     			
     	sLog.mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
     	sLog.mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     	
-    	sLog.mLevel = sLog.mPrefs.getInt(PREF_LEVEL, VERBOSE);
-    	sLog.mFilter = sLog.mPrefs.getString(PREF_FILTER, null);
+    	sLog.mLogFilter = loadFilter(sLog.mPrefs);
     	
     	Intent intent = new Intent(context, LogActivity.class);
     	sLog.mViewIntent = PendingIntent.getActivity(context, 0, intent, 0);
@@ -191,6 +330,11 @@ public final class Log {
     	sLog.mClearIntent = PendingIntent.getActivity(context, 3, clearIntent, 0);
     	
     	sLog.mActivityIntegrationAvailable = isActivityAvailable(context, LogActivity.class.getName());
+    	
+    	sLog.syncJournal();
+    	sLog.syncLogcat();
+    	
+    	sLog.updateSinks();
     }
     
     /**
@@ -200,83 +344,748 @@ public final class Log {
      */
     public static void setNotificationsEnabled(boolean enable) {
     	sNotificationsEnabled = enable;
+    	sLog.updateSinks();
     }
     
     /**
      * Enable or disable toast log output. This is disabled by default and should not
-     * be enabled during any performance critical code. Toast notifications will not
-     * appear when the Log methods are called off of the main thread.
+     * be enabled during any performance critical code. Messages logged in quick 
+     * succession share one toast, which shows the newest and how many more there 
+     * were. Toasts are shown on the main thread whichever thread logged.
      * 
      * @param enable
      */
     public static void setToastsEnabled(boolean enable) {
     	sToastsEnabled = enable;
+    	sLog.updateSinks();
     }
     
-   public static String getNotificationFilter() {
-	   return sLog.mFilter;
-   }
+    /**
+     * Send log entries to a sink, such as a {@link FileSink}, in addition to 
+     * the notification. Entries are added to the buffer and dispatched to 
+     * sinks even while notifications are disabled.
+     * 
+     * @param sink the sink, which can only be added once at a time
+     */
+    public static void addSink(LogSink sink) {
+    	sLog.mDispatcher.add(sink);
+    }
     
-    public static void setNotifactionFilter(String tag) {
-    	if (sLog.mContext != null) {
-    		sLog.mFilter = tag;
-    		sLog.updateNotification();
+    /**
+     * Stop sending log entries to a sink. Entries already queued for it are 
+     * still written before it is closed.
+     */
+    public static void removeSink(LogSink sink) {
+    	sLog.mDispatcher.remove(sink);
+    }
+    
+    /**
+     * Enable or disable the persistent journal. When enabled, log entries are 
+     * also written to a memory-mapped file in the app's files directory, so 
+     * the last entries logged before the process died can be viewed after 
+     * the next call to {@link #initialize(Context)}. This is disabled by 
+     * default and should be called before initializing.
+     * 
+     * @param enable
+     */
+    public static void setJournalEnabled(boolean enable) {
+    	sJournalEnabled = enable;
+    	if (isInitialized()) {
+    		sLog.syncJournal();
+    	}
+    }
+    
+    /**
+     * Get the entries written to the journal during the previous session, 
+     * newest first. This is empty unless the journal is enabled.
+     */
+    public static ArrayList<LogEntry> getPreviousSessionBuffer() {
+    	return new ArrayList<LogEntry>(sLog.mPreviousSession);
+    }
+    
+    /**
+     * Enable or disable adding the app's other output in the system log, 
+     * such as that of the framework and of libraries using 
+     * {@link android.util.Log}, to the log buffer. It is read from logcat on 
+     * a background thread, with level and tag, and is subject to the source 
+     * filter and to a limit of 20 entries 
+     * per tag per second. Messages logged through this class are not added 
+     * twice. This is disabled by default. Before Android 4.1 it requires the 
+     * READ_LOGS permission.
+     * 
+     * @param enable
+     */
+    public static void setLogcatEnabled(boolean enable) {
+    	sLogcatEnabled = enable;
+    	if (isInitialized()) {
+    		sLog.syncLogcat();
+    	}
+    }
+    
+    /**
+     * Set the minimum time between two updates of the notification. Log calls 
+     * made within this interval are batched into a single update which is 
+     * published from a background thread. The default is 250 milliseconds.
+     * 
+     * @param millis the interval in milliseconds
+     */
+    public static void setNotificationInterval(long millis) {
+    	sNotificationInterval = millis;
+    	if (isInitialized()) {
+    		sLog.mPublisher.setInterval(millis);
+    	}
+    }
+    
+    /**
+     * Drop log calls below a minimum level, or from tags outside an allow-list, 
+     * before any entry is created for them. Unlike the notification level and 
+     * filter, which only hide entries, dropped calls are never added to the 
+     * buffer and cost little more than a field read. Dropped calls are still 
+     * sent to the system log.
+     * 
+     * @param minLevel the lowest level to keep, e.g. {@link #DEBUG}
+     * @param tags the tags to keep, or none to keep all tags
+     */
+    public static void setSourceFilter(int minLevel, String... tags) {
+    	sSourceFilter = new SourceFilter(minLevel, tags);
+    }
+    
+    /**
+     * Remove the filter set with {@link #setSourceFilter(int, String...)} so 
+     * that all log calls are added to the buffer again.
+     */
+    public static void clearSourceFilter() {
+    	sSourceFilter = null;
+    }
+    
+    /**
+     * Limit how fast each tag may add entries to the buffer, so that a log 
+     * storm from one tag does not push everything else out. A tag may add a 
+     * burst of entries at once, then a steady number per second; calls over 
+     * the limit are dropped, and a note of how many were dropped is added 
+     * once the tag is let through again. Dropped calls are still sent to the 
+     * system log.
+     * 
+     * <p>Consecutive identical entries are collapsed into one regardless of 
+     * this limit.
+     * 
+     * @param perSecond the steady number of entries per tag per second
+     * @param burst the number of entries a tag may add at once
+     */
+    public static void setRateLimit(int perSecond, int burst) {
+    	sRateLimiter = new RateLimiter(perSecond, burst);
+    }
+    
+    /**
+     * Remove the limit set with {@link #setRateLimit(int, int)}.
+     */
+    public static void clearRateLimit() {
+    	sRateLimiter = null;
+    }
+    
+    /**
+     * @return the filter applied to the notification and {@link LogActivity}
+     */
+    public static LogFilter getLogFilter() {
+    	return sLog.mLogFilter;
+    }
+    
+    /**
+     * Set the filter applied to the notification and {@link LogActivity}. 
+     * The filter is saved and restored the next time the app is started.
+     */
+    public static void setLogFilter(LogFilter filter) {
+    	if (isInitialized()) {
+    		sLog.mLogFilter = (filter == null) ? LogFilter.all() : filter;
+    		sLog.mPublisher.requestPublish();
     		Editor edit = sLog.mPrefs.edit();
-    		edit.putString(PREF_FILTER, tag);
+    		edit.putString(PREF_FILTER_EXPRESSION, sLog.mLogFilter.toString());
     		SharedPreferencesCompat.apply(edit);
     	}
     }
     
+    /**
+     * @return the tag shown when the filter includes exactly one tag, 
+     *         otherwise null
+     * @see #getLogFilter()
+     */
+   public static String getNotificationFilter() {
+	   String[] tags = sLog.mLogFilter.getTags();
+	   return (tags.length == 1) ? tags[0] : null;
+   }
+    
+    /**
+     * Show only the given tag, or all tags if it is null.
+     * 
+     * @see #setLogFilter(LogFilter)
+     */
+    public static void setNotifactionFilter(String tag) {
+    	setLogFilter((tag == null) ? sLog.mLogFilter.withTags() : sLog.mLogFilter.withTags(tag));
+    }
+    
+    /**
+     * @return the lowest level shown
+     */
     public static int getNotifactionLevel() {
-    	return sLog.mLevel;
+    	return sLog.mLogFilter.getMinLevel();
     }
     
+    /**
+     * Show only entries of the given level and above.
+     * 
+     * @see #setLogFilter(LogFilter)
+     */
     public static void setNotifactionLevel(int level) {
-    	if (sLog.mContext != null) {
-    		sLog.mLevel = level;
-    		sLog.updateNotification();
-    		Editor edit = sLog.mPrefs.edit();
-    		edit.putInt(PREF_LEVEL, level);
-    		SharedPreferencesCompat.apply(edit);
-    	}
+    	setLogFilter(sLog.mLogFilter.withMinLevel(level));
     }
     
+    /**
+     * Get a snapshot of the log buffer, newest entries first. This does not
+     * block threads that are logging concurrently, and calls made in the 
+     * last few milliseconds may not have been added to the buffer yet.
+     */
     public static ArrayList<LogEntry> getLogBuffer() {
-    	return new ArrayList<LogEntry>(sLog.mEntries);
+    	return sLog.mEntries.snapshot();
+    }
+    
+    /**
+     * @return the approximate number of entries in the log buffer
+     */
+    public static int getBufferSize() {
+    	return sLog.mEntries.size();
+    }
+    
+    /**
+     * @return the estimated memory used by the log buffer in bytes, useful 
+     *         for sizing a {@link BufferPolicy}
+     */
+    public static long getBufferMemoryUsage() {
+    	return sLog.mEntries.memoryUsage();
+    }
+    
+    /**
+     * @return counters and timings of the notification log since the 
+     *         process started or {@link #resetStats()} was called
+     */
+    public static LogStats getStats() {
+    	return sLog.mMetrics.snapshot(sLog.mEntries);
+    }
+    
+    /**
+     * Start counting the statistics returned by {@link #getStats()} from zero.
+     */
+    public static void resetStats() {
+    	sLog.mMetrics.reset(sLog.mEntries);
+    }
+    
+    static LogBuffer getBuffer() {
+    	return sLog.mEntries;
+    }
+    
+    /**
+     * Add the entries staged by logging threads to the buffer, and so to 
+     * the journal, now rather than on the drainer's next pass.
+     */
+    static void drainStaging() {
+    	sLog.mStaging.drain();
+    }
+    
+    /**
+     * Register a callback that is run whenever an entry is added to the 
+     * buffer or the buffer is cleared. It is usually called on the thread 
+     * that drains the staged entries, once per batch, and must return 
+     * quickly.
+     */
+    static synchronized void addListener(Runnable listener) {
+    	Runnable[] listeners = new Runnable[sListeners.length + 1];
+    	System.arraycopy(sListeners, 0, listeners, 0, sListeners.length);
+    	listeners[sListeners.length] = listener;
+    	sListeners = listeners;
+    }
+    
+    static synchronized void removeListener(Runnable listener) {
+    	ArrayList<Runnable> listeners = new ArrayList<Runnable>();
+    	for (Runnable r : sListeners) {
+    		if (r != listener) {
+    			listeners.add(r);
+    		}
+    	}
+    	sListeners = listeners.toArray(new Runnable[listeners.size()]);
+    }
+    
+    /**
+     * Search the messages in the log buffer. The search index is built on 
+     * first use and then kept up to date by the publisher thread. This may 
+     * take a while and should not be called on the main thread.
+     */
+    static SearchIndex.Results search(LogBuffer buffer, SearchQuery query) {
+    	SearchIndex index = sLog.mSearchIndex;
+    	if (index == null) {
+    		synchronized (sLog) {
+    			if (sLog.mSearchIndex == null) {
+    				sLog.mSearchIndex = new SearchIndex();
+    			}
+    			index = sLog.mSearchIndex;
+    		}
+    	}
+    	return index.search(buffer, query);
+    }
+    
+    /**
+     * Called by {@link LogProvider} so that viewers in other processes are 
+     * told about new entries each time the notification is published.
+     */
+    static void attachProvider(ContentResolver resolver, Uri uri) {
+    	sProviderUri = uri;
+    	sProviderResolver = resolver;
+    }
+    
+    /**
+     * @return true if this is the app's default process, or if that cannot 
+     *         be determined
+     */
+    static synchronized boolean isMainProcess(Context context) {
+    	if (sProcessName == null) {
+    		sProcessName = "";
+    		try {
+    			FileInputStream in = new FileInputStream("/proc/self/cmdline");
+    			try {
+    				byte[] name = new byte[256];
+    				int length = Math.max(0, in.read(name));
+    				int end = 0;
+    				while (end < length && name[end] != 0) {
+    					end++;
+    				}
+    				sProcessName = new String(name, 0, end, "UTF-8");
+    			} finally {
+    				in.close();
+    			}
+    		} catch (IOException e) {
+    			// leave it unknown
+    		}
+    	}
+    	String mainProcess = context.getApplicationInfo().processName;
+    	return sProcessName.length() == 0 || mainProcess == null || sProcessName.equals(mainProcess);
+    }
+    
+    private static void notifyListeners() {
+    	for (Runnable listener : sListeners) {
+    		listener.run();
+    	}
+    }
+    
+    /**
+     * Write the log buffer to a file, oldest entry first. Entries are 
+     * streamed in chunks, so this needs little memory however large the 
+     * buffer is, but it does file I/O and should not be called on the main 
+     * thread.
+     * 
+     * @param format {@link #EXPORT_TEXT}, {@link #EXPORT_JSON} or 
+     *        {@link #EXPORT_BINARY}
+     * @return the number of entries written
+     */
+    public static int exportLogBuffer(File file, int format) throws IOException {
+    	FileOutputStream out = new FileOutputStream(file);
+    	try {
+    		return exportLogBuffer(out.getChannel(), format);
+    	} finally {
+    		out.close();
+    	}
+    }
+    
+    /**
+     * Write the log buffer to a channel, which is left open.
+     * 
+     * @see #exportLogBuffer(File, int)
+     */
+    public static int exportLogBuffer(WritableByteChannel channel, int format) throws IOException {
+    	LogExporter exporter = new LogExporter(channel, format);
+    	int count = exporter.writeBuffer(sLog.mEntries);
+    	exporter.finish();
+    	return count;
     }
     
     public static ArrayList<String> getFilterOptions() {
-    	return new ArrayList<String>(sLog.mFilterOptions);
+    	return TagDictionary.names();
     }
     
+    /**
+     * Remove all entries from the log buffer. Calls made in the last few 
+     * milliseconds that have not been added to the buffer yet are kept.
+     */
     public static void clearLogbuffer() {
-    	if (sLog.mContext != null) {
-    		sLog.mEntries = new ArrayList<LogEntry>();
+    	if (isInitialized()) {
+    		sLog.mMetrics.retire(sLog.mEntries);
+    		sLog.mEntries = new LogBuffer(sLog.mPolicy);
     		sLog.mNotificationManager.cancel(NOTIFICATION_ID);
+    		sLog.mPublisher.requestPublish();
+    		notifyListeners();
+    	}
+    }
+    
+    /**
+     * @return true once the setup has finished, after which all of its 
+     *         fields are visible to the calling thread
+     */
+    private static boolean isInitialized() {
+    	return sState.get() == STATE_INITIALIZED;
+    }
+    
+    /**
+     * Note a line about to be sent to the system log, so the logcat reader 
+     * skips it when it is read back. Every line sent is noted, whether or 
+     * not it was added to the buffer, so calls dropped by the source filter 
+     * or rate limit do not come back in through logcat.
+     */
+    private static void expectSystemLine(int level, String tag, String msg) {
+    	LogcatReader logcat = sLog.mLogcat;
+    	if (logcat != null) {
+    		logcat.expect(level, tag, msg);
     	}
     }
     
-    private void addToEntryBuffer(int level, String tag, String msg) {
-    	LogEntry e = new LogEntry(level, System.currentTimeMillis(), tag, msg);
-    	mEntries.add(0, e);
-    	if (mEntries.size() > MAX_BUFFER_SIZE) {
-    		mEntries.remove(mEntries.size() - 1);
+    private static void expectSystemLine(int level, String tag, Throwable tr) {
+    	LogcatReader logcat = sLog.mLogcat;
+    	if (logcat != null) {
+    		// the system log starts the stack trace with the exception
+    		logcat.expect(level, tag, String.valueOf(tr));
     	}
-    	mFilterOptions.add(tag);
     }
     
-    private synchronized void doNotify(int level, String tag, String msg) {
+    private static boolean isRetained(int level, String tag) {
+    	if (sState.get() == STATE_UNINITIALIZED) {
+    		return false;
+    	}
+    	SourceFilter filter = sSourceFilter;
+    	if (filter != null && !filter.accept(level, tag)) {
+    		sLog.mMetrics.countFiltered();
+    		return false;
+    	}
+    	RateLimiter limiter = sRateLimiter;
+    	if (limiter != null) {
+    		int dropped = limiter.acquire(TagDictionary.intern(tag));
+    		if (dropped < 0) {
+    			sLog.mMetrics.countRateLimited();
+    			return false;
+    		}
+    		if (dropped > 0) {
+    			sLog.doNotify(level, tag, "(rate limit dropped " + dropped + " entries)");
+    		}
+    	}
+    	return true;
+    }
+    
+    private static int println(int priority, String tag, String format, Object arg1, Object arg2, Object arg3, int count) {
+    	boolean retained = isRetained(priority, tag);
+    	String msg = MessageFormatter.format(format, arg1, arg2, arg3, count);
+    	if (retained) {
+    		sLog.doNotify(priority, tag, msg);
+    	}
+    	expectSystemLine(priority, tag, msg);
+    	return android.util.Log.println(priority, tag, msg);
+    }
+    
+    private static int println(int priority, String tag, String format, long arg) {
+    	boolean retained = isRetained(priority, tag);
+    	String msg = MessageFormatter.format(format, arg);
+    	if (retained) {
+    		sLog.doNotify(priority, tag, msg);
+    	}
+    	expectSystemLine(priority, tag, msg);
+    	return android.util.Log.println(priority, tag, msg);
+    }
+    
+    private static int println(int priority, String tag, String format, double arg) {
+    	boolean retained = isRetained(priority, tag);
+    	String msg = MessageFormatter.format(format, arg);
+    	if (retained) {
+    		sLog.doNotify(priority, tag, msg);
+    	}
+    	expectSystemLine(priority, tag, msg);
+    	return android.util.Log.println(priority, tag, msg);
+    }
+    
+    private static LogFilter loadFilter(SharedPreferences prefs) {
+    	String expression = prefs.getString(PREF_FILTER_EXPRESSION, null);
+    	if (expression != null) {
+    		try {
+    			return LogFilter.parse(expression);
+    		} catch (IllegalArgumentException e) {
+    			android.util.Log.w(TAG, "ignoring invalid filter " + expression);
+    			return LogFilter.all();
+    		}
+    	}
+    	
+    	// migrate the level and tag saved by earlier versions
+    	LogFilter filter = LogFilter.all().withMinLevel(prefs.getInt(PREF_LEVEL, VERBOSE));
+    	String tag = prefs.getString(PREF_FILTER, null);
+    	if (tag != null) {
+    		filter = filter.withTags(tag);
+    	}
+    	Editor edit = prefs.edit();
+    	edit.putString(PREF_FILTER_EXPRESSION, filter.toString());
+    	edit.remove(PREF_LEVEL);
+    	edit.remove(PREF_FILTER);
+    	SharedPreferencesCompat.apply(edit);
+    	return filter;
+    }
+    
+    private void addToEntryBuffer(int level, long time, int tagId, String msg, Throwable tr) {
+    	appendToEntryBuffer(level, time, tagId, msg, tr);
+    	notifyListeners();
+    }
+    
+    private void appendToEntryBuffer(int level, long time, int tagId, String msg, Throwable tr) {
+    	LogBuffer entries = mEntries;
+    	boolean timed = mMetrics.countLogged();
+    	long start = timed ? System.nanoTime() : 0;
+    	if (tr != null || !entries.repeat(level, time, tagId, msg)) {
+    		entries.add(level, time, tagId, msg, tr);
+    		LogJournal journal = mJournal;
+    		if (journal != null) {
+    			journal.append(level, time, tagId, msg);
+    		}
+    	} else {
+    		mMetrics.countRepeated();
+    	}
+    	if (timed) {
+    		mMetrics.recordAppend(System.nanoTime() - start);
+    	}
+    	if (mDispatcher.hasEntrySinks()) {
+    		mDispatcher.offer(level, time, tagId, msg, tr);
+    	}
+    }
+    
+    private void doNotify(int level, String tag, String msg) {
+    	doNotify(level, tag, msg, null);
+    }
+    
+    /**
+     * @param tr an exception to keep with the entry, or null. Only a 
+     *        reference is kept; its stack trace is formatted when the entry 
+     *        is expanded in {@link LogActivity}.
+     */
+    private void doNotify(int level, String tag, String msg, Throwable tr) {
+    	if (sState.get() != STATE_INITIALIZED) {
+    		sPreInitQueue.offer(level, System.currentTimeMillis(), TagDictionary.intern(tag), msg, tr);
+    		if (sState.get() == STATE_INITIALIZED) {
+    			// initialization finished meanwhile and may have drained the 
+    			// queue before this entry was offered
+    			drainPreInitQueue();
+    		}
+    		return;
+    	}
+    	if (sNotificationsEnabled || mDispatcher.hasEntrySinks()) {
+    		long time = System.currentTimeMillis();
+    		int tagId = TagDictionary.intern(tag);
+    		// stage the entry for the drainer, which adds it to the buffer 
+    		// and requests the publish, so logging threads share nothing
+    		if (!mStaging.offer(level, time, tagId, msg, tr)) {
+    			addToEntryBuffer(level, time, tagId, msg, tr);
+    			mPublisher.requestPublish();
+    		}
+    	}
+    }
+    
+    /**
+     * Add the log calls queued during initialization to the buffer, in the 
+     * order they were made.
+     */
+    private static void drainPreInitQueue() {
+    	boolean added = false;
+    	LogEntry e;
+    	while ((e = sPreInitQueue.poll()) != null) {
+    		if (sNotificationsEnabled || sLog.mDispatcher.hasEntrySinks()) {
+    			sLog.addToEntryBuffer(e.getLevel(), e.getTime(), e.getTagId(), e.getText(), e.getThrowable());
+    			added = true;
+    		}
+    	}
+    	if (added) {
+    		sLog.mPublisher.requestPublish();
+    	}
+    }
+    
+    /**
+     * Add or remove the built-in sinks to match the settings.
+     */
+    private synchronized void updateSinks() {
+    	if (mContext == null) {
+    		return;
+    	}
     	if (sNotificationsEnabled) {
-    		addToEntryBuffer(level, tag, msg);
-    		updateNotification();
+    		mDispatcher.add(mNotificationSink);
+    	} else {
+    		mDispatcher.remove(mNotificationSink);
+    	}
+    	if (sToastsEnabled && mToastSink == null) {
+    		mToastSink = new ToastSink(mContext, mMetrics);
+    		mDispatcher.add(mToastSink);
+    	} else if (!sToastsEnabled && mToastSink != null) {
+    		mDispatcher.remove(mToastSink);
+    		mToastSink = null;
+    	}
+    }
+
+    /**
+     * Open or close the journal to match the setting.
+     */
+    private synchronized void syncJournal() {
+    	if (sJournalEnabled) {
+    		openJournal();
+    	} else {
+    		closeJournal();
     	}
-    	if (sToastsEnabled) {
-    		doToast(msg);
+    }
+    
+    private synchronized void openJournal() {
+    	if (!isMainProcess(mContext)) {
+    		// the journal file can only be mapped by one process
+    		return;
+    	}
+    	if (mJournal == null) {
+    		File file = new File(mContext.getFilesDir(), JOURNAL_FILE);
+    		try {
+    			LogJournal journal;
+    			try {
+    				journal = LogJournal.open(file, LogJournal.DEFAULT_SIZE);
+    			} catch (RuntimeException e) {
+    				// the file is damaged beyond what the reader checks for, 
+    				// so start again without the previous session
+    				android.util.Log.w(TAG, "discarding unreadable journal", e);
+    				file.delete();
+    				journal = LogJournal.open(file, LogJournal.DEFAULT_SIZE);
+    			}
+    			mPreviousSession = journal.getPreviousSession();
+    			mJournal = journal;
+    		} catch (IOException e) {
+    			android.util.Log.w(TAG, "unable to open journal", e);
+    		}
     	}
     }
+    
+    private synchronized void closeJournal() {
+    	if (mJournal != null) {
+    		mJournal.close();
+    		mJournal = null;
+    	}
+    }
+    
+    /**
+     * Start or stop reading logcat to match the setting.
+     */
+    private synchronized void syncLogcat() {
+    	if (sLogcatEnabled) {
+    		startLogcat();
+    	} else {
+    		stopLogcat();
+    	}
+    }
+    
+    private synchronized void startLogcat() {
+    	if (mLogcat == null) {
+    		mLogcat = new LogcatReader(new LogcatReader.Target() {
+    			public boolean accept(int level, String tag) {
+    				SourceFilter filter = sSourceFilter;
+    				if (filter != null && !filter.accept(level, tag)) {
+    					mMetrics.countFiltered();
+    					return false;
+    				}
+    				return sNotificationsEnabled || mDispatcher.hasEntrySinks();
+    			}
+    			public void append(int level, long time, int tagId, String text) {
+    				if (!mStaging.offer(level, time, tagId, text, null)) {
+    					addToEntryBuffer(level, time, tagId, text, null);
+    					mPublisher.requestPublish();
+    				}
+    			}
+    		}, mMetrics, mPolicy.getSlots());
+    		mLogcat.start();
+    	}
+    }
+    
+    private synchronized void stopLogcat() {
+    	if (mLogcat != null) {
+    		mLogcat.stop();
+    		mLogcat = null;
+    	}
+    }
+
+	private void publish() {
+		// the entries are already in the buffer: the drainer requests a 
+		// publish after it appends, and must not be waited for here as it 
+		// may be held up by a blocking sink
+		SearchIndex index = mSearchIndex;
+		if (index != null) {
+			index.update(mEntries);
+		}
+		mDispatcher.signal();
+		ContentResolver resolver = sProviderResolver;
+		if (resolver != null) {
+			resolver.notifyChange(sProviderUri, null);
+		}
+	}
+
+	/**
+	 * Rebuilds the notification after every publish, on a thread of its 
+	 * own, so a slow notification manager does not hold up the other sinks.
+	 */
+	/**
+	 * Adds the staged entries to the buffer and journal before the process 
+	 * dies of an uncaught exception, then hands the exception on.
+	 */
+	private static final class CrashFlush implements Thread.UncaughtExceptionHandler {
+		
+		private final Thread.UncaughtExceptionHandler mPrevious;
+		
+		CrashFlush(Thread.UncaughtExceptionHandler previous) {
+			mPrevious = previous;
+		}
+		
+		public void uncaughtException(Thread thread, Throwable ex) {
+			try {
+				drainStaging();
+			} catch (RuntimeException e) {
+				// never get in the way of the crash
+			}
+			if (mPrevious != null) {
+				mPrevious.uncaughtException(thread, ex);
+			} else {
+				System.err.print("Exception in thread \"" + thread.getName() + "\" ");
+				ex.printStackTrace();
+			}
+		}
+		
+	}
+	
+	private final class NotificationSink extends LogSink {
+		
+		NotificationSink() {
+			// never sent entries
+			setQueueCapacity(1);
+		}
+		
+		@Override
+		protected void write(List<LogEntry> entries) {
+			updateNotification();
+		}
+		
+		@Override
+		boolean receivesEntries() {
+			return false;
+		}
+		
+	}
 
 	private void updateNotification() {
 		
+		long start = System.nanoTime();
+		LogBuffer entries = mEntries;
+		if (entries.head() == 0) {
+			// the buffer was cleared since this update was requested
+			mNotificationManager.cancel(NOTIFICATION_ID);
+			return;
+		}
+		
 		NotificationCompat.Builder mBuilder = new NotificationCompat.Builder(mContext)
 			.setSmallIcon(mIcon)
 			.setContentTitle(mLabel);
@@ -291,42 +1100,28 @@ public final class Log {
 		NotificationCompat.InboxStyle inboxStyle =
 				new NotificationCompat.InboxStyle();
 
-		int count = 0;
-		for (int i=0; i < mEntries.size(); i++) {
-			if ((mLevel == VERBOSE || mLevel == mEntries.get(i).getLevel()) && (mFilter == null || mFilter.equals(mEntries.get(i).getTag()))) {
-				if (count <  10) {
-					if (count == 0) mBuilder.setContentText(mEntries.get(i).getText());
-					inboxStyle.addLine(mEntries.get(i).getText());
-				}
-				count++;
+		mInbox.update(entries, mLogFilter.compile());
+		boolean first = true;
+		for (int i=0; i < mInbox.getLineCount(); i++) {
+			LogEntry e = entries.get(mInbox.getLine(i));
+			if (e != null) {
+				if (first) mBuilder.setContentText(e.getText());
+				inboxStyle.addLine(e.getText());
+				first = false;
 			}
 		}
-		mBuilder.setNumber(count);
+		mBuilder.setNumber(mInbox.getCount());
 		mBuilder.setStyle(inboxStyle);
 		
+		Notification notification = mBuilder.build();
+		long built = System.nanoTime();
+		
 		// issue the notification
-		mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
+		mNotificationManager.notify(NOTIFICATION_ID, notification);
+		mMetrics.recordPublish(built - start, System.nanoTime() - built);
 		
 	}
     
-    private void doToast(String msg) {
-    	try {
-    		if (mLastToast0) {
-    			mLogToast0.cancel();
-    			mLogToast1 = Toast.makeText(mContext, msg, Toast.LENGTH_SHORT);
-    			mLogToast1.show();
-    			mLastToast0 = false;
-    		} else {
-    			mLogToast1.cancel();
-    			mLogToast0 = Toast.makeText(mContext, msg, Toast.LENGTH_SHORT);
-    			mLogToast0.show();
-    			mLastToast0 = true;
-    		}
-    	} catch (RuntimeException re) {
-    		// we cannot toast while off the main thread
-    	}
-    }
-    
     private static boolean isActivityAvailable(Context context, String className) {
         final PackageManager packageManager = context.getPackageManager();
         final Intent intent = new Intent();
@@ -344,9 +1139,10 @@ public final class Log {
      * @param msg The message you would like logged.
      */
     public static int v(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(VERBOSE, tag)) {
     		sLog.doNotify(VERBOSE, tag, msg);
     	}
+        expectSystemLine(VERBOSE, tag, msg);
         return android.util.Log.v(tag, msg);
     }
 
@@ -358,12 +1154,87 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int v(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(VERBOSE, tag, msg);
+    	if (isRetained(VERBOSE, tag)) {
+    		sLog.doNotify(VERBOSE, tag, msg, tr);
     	}
+    	expectSystemLine(VERBOSE, tag, msg);
     	return android.util.Log.v(tag, msg, tr);
     }
 
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder.
+     */
+    public static int v(String tag, String format, Object arg) {
+    	return println(VERBOSE, tag, format, arg, null, null, 1);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @see #v(String, String, Object)
+     */
+    public static int v(String tag, String format, Object arg1, Object arg2) {
+    	return println(VERBOSE, tag, format, arg1, arg2, null, 2);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @see #v(String, String, Object)
+     */
+    public static int v(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    	return println(VERBOSE, tag, format, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #v(String, String, Object)
+     */
+    public static int v(String tag, String format, int arg) {
+    	return println(VERBOSE, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #v(String, String, Object)
+     */
+    public static int v(String tag, String format, long arg) {
+    	return println(VERBOSE, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #VERBOSE} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #v(String, String, Object)
+     */
+    public static int v(String tag, String format, double arg) {
+    	return println(VERBOSE, tag, format, arg);
+    }
+
     /**
      * Send a {@link #DEBUG} log message.
      * @param tag Used to identify the source of a log message.  It usually identifies
@@ -371,9 +1242,10 @@ public final class Log {
      * @param msg The message you would like logged.
      */
     public static int d(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(DEBUG, tag)) {
     		sLog.doNotify(DEBUG, tag, msg);
     	}
+    	expectSystemLine(DEBUG, tag, msg);
     	return android.util.Log.d(tag, msg);
     }
 
@@ -385,12 +1257,87 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int d(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(DEBUG, tag, msg);
+    	if (isRetained(DEBUG, tag)) {
+    		sLog.doNotify(DEBUG, tag, msg, tr);
     	}
+    	expectSystemLine(DEBUG, tag, msg);
     	return android.util.Log.d(tag, msg, tr);
     }
 
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder.
+     */
+    public static int d(String tag, String format, Object arg) {
+    	return println(DEBUG, tag, format, arg, null, null, 1);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @see #d(String, String, Object)
+     */
+    public static int d(String tag, String format, Object arg1, Object arg2) {
+    	return println(DEBUG, tag, format, arg1, arg2, null, 2);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @see #d(String, String, Object)
+     */
+    public static int d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    	return println(DEBUG, tag, format, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #d(String, String, Object)
+     */
+    public static int d(String tag, String format, int arg) {
+    	return println(DEBUG, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #d(String, String, Object)
+     */
+    public static int d(String tag, String format, long arg) {
+    	return println(DEBUG, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #DEBUG} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #d(String, String, Object)
+     */
+    public static int d(String tag, String format, double arg) {
+    	return println(DEBUG, tag, format, arg);
+    }
+
     /**
      * Send an {@link #INFO} log message.
      * @param tag Used to identify the source of a log message.  It usually identifies
@@ -398,9 +1345,10 @@ public final class Log {
      * @param msg The message you would like logged.
      */
     public static int i(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(INFO, tag)) {
     		sLog.doNotify(INFO, tag, msg);
     	}
+    	expectSystemLine(INFO, tag, msg);
     	return android.util.Log.i(tag, msg);
     }
 
@@ -412,12 +1360,87 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int i(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(INFO, tag, msg);
+    	if (isRetained(INFO, tag)) {
+    		sLog.doNotify(INFO, tag, msg, tr);
     	}
+    	expectSystemLine(INFO, tag, msg);
     	return android.util.Log.i(tag, msg, tr);
     }
 
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder.
+     */
+    public static int i(String tag, String format, Object arg) {
+    	return println(INFO, tag, format, arg, null, null, 1);
+    }
+
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @see #i(String, String, Object)
+     */
+    public static int i(String tag, String format, Object arg1, Object arg2) {
+    	return println(INFO, tag, format, arg1, arg2, null, 2);
+    }
+
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @see #i(String, String, Object)
+     */
+    public static int i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    	return println(INFO, tag, format, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #i(String, String, Object)
+     */
+    public static int i(String tag, String format, int arg) {
+    	return println(INFO, tag, format, arg);
+    }
+
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #i(String, String, Object)
+     */
+    public static int i(String tag, String format, long arg) {
+    	return println(INFO, tag, format, arg);
+    }
+
+    /**
+     * Send an {@link #INFO} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #i(String, String, Object)
+     */
+    public static int i(String tag, String format, double arg) {
+    	return println(INFO, tag, format, arg);
+    }
+
     /**
      * Send a {@link #WARN} log message.
      * @param tag Used to identify the source of a log message.  It usually identifies
@@ -425,9 +1448,10 @@ public final class Log {
      * @param msg The message you would like logged.
      */
     public static int w(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(WARN, tag)) {
     		sLog.doNotify(WARN, tag, msg);
     	}
+    	expectSystemLine(WARN, tag, msg);
     	return android.util.Log.w(tag, msg);
     }
 
@@ -439,12 +1463,87 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int w(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(WARN, tag, msg);
+    	if (isRetained(WARN, tag)) {
+    		sLog.doNotify(WARN, tag, msg, tr);
     	}
+    	expectSystemLine(WARN, tag, msg);
     	return android.util.Log.w(tag, msg, tr);
     }
 
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder.
+     */
+    public static int w(String tag, String format, Object arg) {
+    	return println(WARN, tag, format, arg, null, null, 1);
+    }
+
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @see #w(String, String, Object)
+     */
+    public static int w(String tag, String format, Object arg1, Object arg2) {
+    	return println(WARN, tag, format, arg1, arg2, null, 2);
+    }
+
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @see #w(String, String, Object)
+     */
+    public static int w(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    	return println(WARN, tag, format, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #w(String, String, Object)
+     */
+    public static int w(String tag, String format, int arg) {
+    	return println(WARN, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #w(String, String, Object)
+     */
+    public static int w(String tag, String format, long arg) {
+    	return println(WARN, tag, format, arg);
+    }
+
+    /**
+     * Send a {@link #WARN} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #w(String, String, Object)
+     */
+    public static int w(String tag, String format, double arg) {
+    	return println(WARN, tag, format, arg);
+    }
+
     /**
      * Checks to see whether or not a log for the specified tag is loggable at the specified level.
      *
@@ -463,7 +1562,9 @@ public final class Log {
      * @return Whether or not that this is allowed to be logged.
      * @throws IllegalArgumentException is thrown if the tag.length() > 23.
      */
-    public static native boolean isLoggable(String tag, int level);
+    public static boolean isLoggable(String tag, int level) {
+    	return android.util.Log.isLoggable(tag, level);
+    }
 
     /*
      * Send a {@link #WARN} log message and log the exception.
@@ -472,6 +1573,10 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int w(String tag, Throwable tr) {
+    	if (isRetained(WARN, tag)) {
+    		sLog.doNotify(WARN, tag, String.valueOf(tr), tr);
+    	}
+    	expectSystemLine(WARN, tag, tr);
     	return android.util.Log.w(tag, tr);
     }
 
@@ -482,9 +1587,10 @@ public final class Log {
      * @param msg The message you would like logged.
      */
     public static int e(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(ERROR, tag)) {
     		sLog.doNotify(ERROR, tag, msg);
     	}
+    	expectSystemLine(ERROR, tag, msg);
     	return android.util.Log.e(tag, msg);
     }
 
@@ -496,12 +1602,87 @@ public final class Log {
      * @param tr An exception to log
      */
     public static int e(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(ERROR, tag, msg);
+    	if (isRetained(ERROR, tag)) {
+    		sLog.doNotify(ERROR, tag, msg, tr);
     	}
+    	expectSystemLine(ERROR, tag, msg);
     	return android.util.Log.e(tag, msg, tr);
     }
 
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder.
+     */
+    public static int e(String tag, String format, Object arg) {
+    	return println(ERROR, tag, format, arg, null, null, 1);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @see #e(String, String, Object)
+     */
+    public static int e(String tag, String format, Object arg1, Object arg2) {
+    	return println(ERROR, tag, format, arg1, arg2, null, 2);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @see #e(String, String, Object)
+     */
+    public static int e(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    	return println(ERROR, tag, format, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #e(String, String, Object)
+     */
+    public static int e(String tag, String format, int arg) {
+    	return println(ERROR, tag, format, arg);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #e(String, String, Object)
+     */
+    public static int e(String tag, String format, long arg) {
+    	return println(ERROR, tag, format, arg);
+    }
+
+    /**
+     * Send an {@link #ERROR} log message built from a format string.
+     * @param tag Used to identify the source of a log message.  It usually identifies
+     *        the class or activity where the log call occurs.
+     * @param format The message format, with a <code>{}</code> placeholder for each argument.
+     * @param arg The argument substituted for the placeholder, without boxing.
+     * @see #e(String, String, Object)
+     */
+    public static int e(String tag, String format, double arg) {
+    	return println(ERROR, tag, format, arg);
+    }
+
     /**
      * What a Terrible Failure: Report a condition that should never happen.
      * The error will always be logged at level ASSERT with the call stack.
@@ -513,9 +1694,10 @@ public final class Log {
      */
     @TargetApi(Build.VERSION_CODES.FROYO) 
     public static int wtf(String tag, String msg) {
-    	if (sLog.mContext != null) {
+    	if (isRetained(WTF, tag)) {
     		sLog.doNotify(WTF, tag, msg);
     	}
+    	expectSystemLine(WTF, tag, msg);
     	return android.util.Log.wtf(tag, msg);
     }
 
@@ -527,6 +1709,10 @@ public final class Log {
      */
     @TargetApi(Build.VERSION_CODES.FROYO) 
     public static int wtf(String tag, Throwable tr) {
+    	if (isRetained(WTF, tag)) {
+    		sLog.doNotify(WTF, tag, String.valueOf(tr), tr);
+    	}
+    	expectSystemLine(WTF, tag, tr);
     	return android.util.Log.wtf(tag, tr);
     }
 
@@ -539,9 +1725,10 @@ public final class Log {
      */
     @TargetApi(Build.VERSION_CODES.FROYO) 
     public static int wtf(String tag, String msg, Throwable tr) {
-    	if (sLog.mContext != null) {
-    		sLog.doNotify(WTF, tag, msg);
+    	if (isRetained(WTF, tag)) {
+    		sLog.doNotify(WTF, tag, msg, tr);
     	}
+    	expectSystemLine(WTF, tag, msg);
     	return android.util.Log.wtf(tag, msg, tr);
     }
 
@@ -574,6 +1761,7 @@ public final class Log {
      * @return The number of bytes written.
      */
     public static int println(int priority, String tag, String msg) {
+        expectSystemLine(priority, tag, msg);
         return android.util.Log.println(priority, tag, msg);
     }
 
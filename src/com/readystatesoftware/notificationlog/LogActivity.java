@@ -16,21 +16,32 @@
 
 package com.readystatesoftware.notificationlog;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
 
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
-import android.webkit.WebView;
-import android.webkit.WebViewClient;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.Toast;
 
 public class LogActivity extends Activity {
 
@@ -40,25 +51,99 @@ public class LogActivity extends Activity {
 	public static final int ACTION_FILTER = 2;
 	public static final int ACTION_LEVEL = 3;
 	public static final int ACTION_CLEAR = 4;
+	public static final int ACTION_PREVIOUS = 5;
+	public static final int ACTION_SEARCH = 6;
+	public static final int ACTION_EXPORT = 7;
+	public static final int ACTION_STATS = 8;
 	
-	WebView wv;
+	private static final long FRAME_MILLIS = 16;
+	
+	ListView lv;
+	LogAdapter adapter;
+	LogSource source;
 	int action;
 	int selected;
+	SearchQuery query;
+	SearchTask searchTask;
+	
+	private final Handler mHandler = new Handler();
+	private final AtomicBoolean mRefreshPending = new AtomicBoolean();
+	
+	// called on logging threads, schedules at most one refresh per frame
+	private final Runnable mLogListener = new Runnable() {
+		public void run() {
+			if (mRefreshPending.compareAndSet(false, true)) {
+				mHandler.postDelayed(mRefreshTask, FRAME_MILLIS);
+			}
+		}
+	};
+	
+	private final Runnable mRefreshTask = new Runnable() {
+		public void run() {
+			mRefreshPending.set(false);
+			appendNewEntries();
+		}
+	};
 	
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		
-		wv = new WebView(this);
-		setContentView(wv, new ViewGroup.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+		source = LogSource.create(this);
+		adapter = new LogAdapter(this, new Runnable() {
+			public void run() {
+				scrollToNewest();
+			}
+		});
+		lv = new ListView(this);
+		lv.setBackgroundColor(Color.WHITE);
+		lv.setCacheColorHint(Color.WHITE);
+		lv.setDividerHeight(0);
+		lv.setFastScrollEnabled(true);
+		lv.setStackFromBottom(true);
+		lv.setTranscriptMode(AbsListView.TRANSCRIPT_MODE_NORMAL);
+		lv.setAdapter(adapter);
+		lv.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+				LogEntry e = adapter.toggleExpanded(position);
+				if (e != null) {
+					new StackTraceTask(e).execute();
+				}
+			}
+		});
+		setContentView(lv, new ViewGroup.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
 		setTitle("Log");
-		wv.setWebViewClient(new Callback());
 		
 		action = getIntent().getIntExtra(ARG_ACTION, ACTION_VIEW);
 		init(true);
 		
 	}
 	
+	@Override
+	protected void onResume() {
+		super.onResume();
+		source.start(mLogListener);
+		// catch up with anything logged while paused
+		appendNewEntries();
+	}
+	
+	@Override
+	protected void onPause() {
+		source.stop();
+		mHandler.removeCallbacks(mRefreshTask);
+		mRefreshPending.set(false);
+		super.onPause();
+	}
+	
+	@Override
+	protected void onDestroy() {
+		if (searchTask != null) {
+			searchTask.cancel(false);
+		}
+		source.release();
+		super.onDestroy();
+	}
+	
 	@Override
 	protected void onNewIntent(Intent intent) {
 		super.onNewIntent(intent);
@@ -69,7 +154,12 @@ public class LogActivity extends Activity {
 	@Override
     public boolean onCreateOptionsMenu(Menu menu) {
         
-        MenuItem item = menu.add(0, ACTION_FILTER, 0, "Filter");
+        MenuItem item = menu.add(0, ACTION_SEARCH, 0, "Search");
+        if (Build.VERSION.SDK_INT >= 11) {
+            item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+        }
+        
+        item = menu.add(0, ACTION_FILTER, 0, "Filter");
         if (Build.VERSION.SDK_INT >= 11) {
             item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
         }
@@ -79,11 +169,28 @@ public class LogActivity extends Activity {
             item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
         }
         
+        item = menu.add(0, ACTION_EXPORT, 0, "Export");
+        if (Build.VERSION.SDK_INT >= 11) {
+            item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+        }
+        
+        item = menu.add(0, ACTION_STATS, 0, "Stats");
+        if (Build.VERSION.SDK_INT >= 11) {
+            item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+        }
+        
         item = menu.add(0, ACTION_CLEAR, 0, "Clear");
         if (Build.VERSION.SDK_INT >= 11) {
             item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
         }
         
+        if (!source.getPreviousSession().isEmpty()) {
+            item = menu.add(0, ACTION_PREVIOUS, 0, "Previous Session");
+            if (Build.VERSION.SDK_INT >= 11) {
+                item.setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            }
+        }
+        
         return true;
     }
 	
@@ -100,8 +207,13 @@ public class LogActivity extends Activity {
 		case ACTION_VIEW:
 			updateLogDisplay();
 			break;
+		case ACTION_PREVIOUS:
+			setTitle("Previous Session");
+			adapter.setEntries(source.getPreviousSession(), source.getFilter().compile());
+			scrollToNewest();
+			break;
 		case ACTION_CLEAR:
-			Log.clearLogbuffer();
+			source.clear();
 			finish();
 			break;
 		case ACTION_LEVEL:
@@ -110,6 +222,15 @@ public class LogActivity extends Activity {
 		case ACTION_FILTER:
 			showFilterDialog(newInstance);
 			break;
+		case ACTION_SEARCH:
+			showSearchDialog();
+			break;
+		case ACTION_EXPORT:
+			showExportDialog();
+			break;
+		case ACTION_STATS:
+			new StatsTask().execute();
+			break;
 		default:
 			break;
 		}
@@ -117,57 +238,117 @@ public class LogActivity extends Activity {
 	}
 
 	private void updateLogDisplay() {
-		
-		ArrayList<LogEntry> data = Log.getLogBuffer();
-		
-		if (data != null) {
-			StringBuilder body = new StringBuilder();
-			body.append("<html><head>");
-			body.append("</head><body><pre>");
-			for (int i=data.size()-1; i >= 0; i--) {
-				LogEntry logEntry = data.get(i);
-				if (Log.getNotifactionLevel() == Log.VERBOSE || Log.getNotifactionLevel() == logEntry.getLevel()) {
-					if (Log.getNotificationFilter() == null || Log.getNotificationFilter().equals(logEntry.getTag())) {
-						body.append(logEntry);
-					}
-				}
-			}
-			body.append("</pre></body></html>");
-			wv.loadDataWithBaseURL("file:///android_asset/", body.toString(), "text/html", "utf-8", null);
-			
+		if (searchTask != null) {
+			searchTask.cancel(false);
+			searchTask = null;
+		}
+		if (query != null) {
+			setTitle("Search: " + query.getText());
+			searchTask = new SearchTask(source.getBuffer(), query);
+			searchTask.execute();
+			return;
+		}
+		setTitle("Log");
+		adapter.setBuffer(source.getBuffer(), source.getFilter().compile());
+	}
+	
+	private void appendNewEntries() {
+		LogBuffer shown = adapter.getBuffer();
+		if (shown == null) {
+			// not showing the live buffer
+			return;
+		}
+		if (shown != source.getBuffer()) {
+			// the buffer was cleared
+			updateLogDisplay();
+			return;
+		}
+		int first = lv.getFirstVisiblePosition();
+		int removed = adapter.update();
+		if (removed > 0 && lv.getLastVisiblePosition() < adapter.getCount() + removed - 1) {
+			// keep the rows the user scrolled to in place
+			lv.setSelection(Math.max(0, first - removed));
+		}
+	}
+	
+	private void scrollToNewest() {
+		if (adapter.getCount() > 0) {
+			lv.setSelection(adapter.getCount() - 1);
 		}
-		
 	}
 
 	private void showFilterDialog(final boolean finishOnOk) {
 		
+		final LogFilter filter = source.getFilter();
 		ArrayList<String> t = Log.getFilterOptions();
-		
-		int j = 0;
-		selected = 0;
-		for (String val : t) {
-			if (val.equals(Log.getNotificationFilter())) {
-				selected = j+1;
+		for (String tag : filter.getTags()) {
+			if (!t.contains(tag)) {
+				t.add(tag);
 			}
-			j++;
 		}
-		
-		t.add(0, "None");
 		final String[] tags = t.toArray(new String[t.size()]);
+		final boolean[] checked = new boolean[tags.length];
+		for (String tag : filter.getTags()) {
+			checked[t.indexOf(tag)] = true;
+		}
 		
 		AlertDialog dlg = new AlertDialog.Builder(this)
 		.setTitle("Tag Filter")
-		.setSingleChoiceItems(tags, selected, new DialogInterface.OnClickListener() {
-		    public void onClick(DialogInterface dialog, int which) {
-		    	selected = which;
+		.setMultiChoiceItems(tags, checked, new DialogInterface.OnMultiChoiceClickListener() {
+		    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+		    	checked[which] = isChecked;
 		    }
 		})
 		.setPositiveButton("OK", new DialogInterface.OnClickListener() {
 		        public void onClick(DialogInterface dialog, int whichButton) {
-		        	if (selected == 0) {
-		        		Log.setNotifactionFilter(null);
+		        	ArrayList<String> selectedTags = new ArrayList<String>();
+		        	for (int i = 0; i < tags.length; i++) {
+		        		if (checked[i]) {
+		        			selectedTags.add(tags[i]);
+		        		}
+		        	}
+		        	source.setFilter(filter.withTags(selectedTags.toArray(new String[selectedTags.size()])));
+		        	if (finishOnOk) {
+		        		finish();
 		        	} else {
-		        		Log.setNotifactionFilter(tags[selected]);
+		        		updateLogDisplay();
+		        	}
+		        }
+		    })
+		.setNeutralButton("Advanced", new DialogInterface.OnClickListener() {
+		        public void onClick(DialogInterface dialog, int whichButton) {
+		        	showFilterExpressionDialog(finishOnOk);
+		        }
+		    })
+		.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+		        public void onClick(DialogInterface dialog, int whichButton) {
+		        	if (finishOnOk) {
+		        		finish();
+		        	}
+		        }
+		    })
+		.create();
+		
+		dlg.show();
+		
+	}
+	
+	private void showFilterExpressionDialog(final boolean finishOnOk) {
+		
+		final EditText input = new EditText(this);
+		input.setSingleLine(true);
+		input.setHint("level:W tag:Net -tag:Db text");
+		input.setText(source.getFilter().toString());
+		
+		AlertDialog dlg = new AlertDialog.Builder(this)
+		.setTitle("Filter")
+		.setView(input)
+		.setPositiveButton("OK", new DialogInterface.OnClickListener() {
+		        public void onClick(DialogInterface dialog, int whichButton) {
+		        	try {
+		        		source.setFilter(LogFilter.parse(input.getText().toString()));
+		        	} catch (IllegalArgumentException e) {
+		        		Toast.makeText(LogActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
 		        	}
 		        	if (finishOnOk) {
 		        		finish();
@@ -189,6 +370,205 @@ public class LogActivity extends Activity {
 		
 	}
 
+	private void showSearchDialog() {
+		
+		final EditText input = new EditText(this);
+		input.setSingleLine(true);
+		input.setHint("Text or regular expression");
+		if (query != null) {
+			input.setText(query.getText());
+		}
+		
+		AlertDialog dlg = new AlertDialog.Builder(this)
+		.setTitle("Search")
+		.setView(input)
+		.setPositiveButton("Find", new DialogInterface.OnClickListener() {
+		        public void onClick(DialogInterface dialog, int whichButton) {
+		        	search(input.getText().toString(), false);
+		        }
+		    })
+		.setNeutralButton("Regex", new DialogInterface.OnClickListener() {
+		        public void onClick(DialogInterface dialog, int whichButton) {
+		        	search(input.getText().toString(), true);
+		        }
+		    })
+		.setNegativeButton("Cancel", null)
+		.create();
+		
+		dlg.show();
+		
+	}
+	
+	private void search(String text, boolean regex) {
+		if (text.length() == 0) {
+			query = null;
+		} else if (regex) {
+			try {
+				query = SearchQuery.regex(text);
+			} catch (PatternSyntaxException e) {
+				Toast.makeText(this, "Invalid regular expression", Toast.LENGTH_SHORT).show();
+				return;
+			}
+		} else {
+			query = SearchQuery.substring(text);
+		}
+		updateLogDisplay();
+	}
+	
+	/**
+	 * Searches the buffer off the main thread, then shows the results.
+	 */
+	private class SearchTask extends AsyncTask<Void, Void, SearchIndex.Results> {
+		
+		private final LogBuffer mBuffer;
+		private final SearchQuery mQuery;
+		
+		SearchTask(LogBuffer buffer, SearchQuery query) {
+			mBuffer = buffer;
+			mQuery = query;
+		}
+		
+		@Override
+		protected SearchIndex.Results doInBackground(Void... params) {
+			return source.search(mBuffer, mQuery);
+		}
+		
+		@Override
+		protected void onPostExecute(SearchIndex.Results results) {
+			if (searchTask != this) {
+				return;
+			}
+			searchTask = null;
+			adapter.setSearchResults(mBuffer, source.getFilter().compile(), mQuery, results);
+		}
+		
+	}
+
+	private void showExportDialog() {
+		
+		final String[] items = { "Text", "JSON Lines", "Binary" };
+		final int[] formats = { Log.EXPORT_TEXT, Log.EXPORT_JSON, Log.EXPORT_BINARY };
+		
+		AlertDialog dlg = new AlertDialog.Builder(this)
+		.setTitle("Export")
+		.setItems(items, new DialogInterface.OnClickListener() {
+		    public void onClick(DialogInterface dialog, int which) {
+		    	new ExportTask(formats[which]).execute();
+		    }
+		})
+		.setNegativeButton("Cancel", null)
+		.create();
+		
+		dlg.show();
+		
+	}
+	
+	/**
+	 * Writes the buffer to the app's private cache directory, then offers 
+	 * it to share through {@link LogProvider}, which lets only the app it 
+	 * is shared with read it.
+	 */
+	private class ExportTask extends AsyncTask<Void, Void, File> {
+		
+		private final int mFormat;
+		private final File mDir = LogProvider.getExportDir(LogActivity.this);
+		
+		ExportTask(int format) {
+			mFormat = format;
+		}
+		
+		@Override
+		protected File doInBackground(Void... params) {
+			if (!mDir.isDirectory() && !mDir.mkdirs()) {
+				return null;
+			}
+			// only the latest export is kept
+			File[] previous = mDir.listFiles();
+			if (previous != null) {
+				for (File file : previous) {
+					file.delete();
+				}
+			}
+			String extension = (mFormat == Log.EXPORT_JSON) ? ".jsonl" : (mFormat == Log.EXPORT_BINARY) ? ".bin" : ".txt";
+			File file = new File(mDir, "log-" + System.currentTimeMillis() + extension);
+			try {
+				source.export(file, mFormat);
+				return file;
+			} catch (IOException e) {
+				android.util.Log.w("NotificationLog", "export failed", e);
+				file.delete();
+				return null;
+			}
+		}
+		
+		@Override
+		protected void onPostExecute(File file) {
+			if (file == null) {
+				Toast.makeText(LogActivity.this, "Export failed", Toast.LENGTH_SHORT).show();
+				return;
+			}
+			Uri uri = LogProvider.getExportUri(LogActivity.this, file);
+			if (getPackageManager().resolveContentProvider(getPackageName() + LogProvider.AUTHORITY_SUFFIX, 0) == null) {
+				Toast.makeText(LogActivity.this, "Declare LogProvider in the manifest to share exports", Toast.LENGTH_LONG).show();
+				return;
+			}
+			Intent share = new Intent(Intent.ACTION_SEND);
+			share.setType((mFormat == Log.EXPORT_BINARY) ? "application/octet-stream" : "text/plain");
+			share.putExtra(Intent.EXTRA_SUBJECT, file.getName());
+			share.putExtra(Intent.EXTRA_STREAM, uri);
+			share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+			startActivity(Intent.createChooser(share, "Share Log"));
+		}
+		
+	}
+
+	/**
+	 * Fetches the stats, which may mean a call to the logging process, 
+	 * then shows them.
+	 */
+	private class StatsTask extends AsyncTask<Void, Void, String> {
+		
+		@Override
+		protected String doInBackground(Void... params) {
+			return source.getStats();
+		}
+		
+		@Override
+		protected void onPostExecute(String stats) {
+			new AlertDialog.Builder(LogActivity.this)
+			.setTitle("Stats")
+			.setMessage(stats)
+			.setPositiveButton("OK", null)
+			.create()
+			.show();
+		}
+		
+	}
+
+	/**
+	 * Formats a stack trace, which for a remote source means a call to the 
+	 * logging process, then shows it in the expanded row.
+	 */
+	private class StackTraceTask extends AsyncTask<Void, Void, String> {
+		
+		private final LogEntry entry;
+		
+		StackTraceTask(LogEntry entry) {
+			this.entry = entry;
+		}
+		
+		@Override
+		protected String doInBackground(Void... params) {
+			return entry.getStackTrace();
+		}
+		
+		@Override
+		protected void onPostExecute(String stackTrace) {
+			adapter.setStackTrace(entry, stackTrace);
+		}
+		
+	}
+
 	private void showLevelDialog(final boolean finishOnOk) {
 		
 		final String[] items = { "Verbose", "Debug", "Info", "Warn", "Error", "Assert" };
@@ -196,14 +576,14 @@ public class LogActivity extends Activity {
 		
 		int i = 0;
 		for (int val : values) {
-			if (val == Log.getNotifactionLevel()) {
+			if (val == source.getFilter().getMinLevel()) {
 				selected = i;
 			}
 			i++;
 		}
 		
 		AlertDialog dlg = new AlertDialog.Builder(this)
-		.setTitle("Log Level")
+		.setTitle("Minimum Level")
 		.setSingleChoiceItems(items, selected, new DialogInterface.OnClickListener() {
 		    public void onClick(DialogInterface dialog, int which) {
 		    	selected = which;
@@ -211,7 +591,7 @@ public class LogActivity extends Activity {
 		})
 		.setPositiveButton("OK", new DialogInterface.OnClickListener() {
 		        public void onClick(DialogInterface dialog, int whichButton) {
-		        	Log.setNotifactionLevel(values[selected]);
+		        	source.setFilter(source.getFilter().withMinLevel(values[selected]));
 		        	if (finishOnOk) {
 		        		finish();
 		        	} else {
@@ -231,23 +611,5 @@ public class LogActivity extends Activity {
 		dlg.show();
 		
 	}
-	
-	private class Callback extends WebViewClient {
-
-		private Handler mScrollHandler = new Handler();
-		
-		private Runnable mScrollRunner = new Runnable() {
-			public void run() {
-				wv.pageDown(true);
-			}
-		};
-		
-		@Override
-		public void onPageFinished(WebView view, String url) {
-			mScrollHandler.removeCallbacks(mScrollRunner);
-			mScrollHandler.postDelayed(mScrollRunner, 300);
-		}
-			
-	}
 
 }
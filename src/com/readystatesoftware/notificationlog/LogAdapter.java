@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * List adapter over the log buffer, oldest entry first. Only the sequence
+ * numbers of the matching entries are indexed, off the main thread and
+ * only for entries appended since the last time; the entries themselves
+ * are read from the buffer a page at a time as rows scroll into view, and
+ * only a few pages are kept.
+ *
+ * <p>Rows of entries logged with an exception can be expanded to show the
+ * stack trace, which is only formatted at that point, off the main thread.
+ */
+final class LogAdapter extends BaseAdapter {
+
+	private static final int PAGE_SIZE = 64;
+	private static final int MAX_PAGES = 8;
+	private static final String LOADING = "(loading stack trace)";
+
+	private final Context mContext;
+	private final Runnable mOnShown;
+
+	// entries that are not in the main buffer, shown before the indexed ones
+	private List<LogEntry> mEntries = new ArrayList<LogEntry>();
+
+	private LogBuffer mBuffer;
+	private FilterPredicate mPredicate;
+	private SearchQuery mQuery;
+	private long mNext;
+	private long[] mSeqs = new long[0];
+	private int mSeqCount;
+	private IndexTask mIndexTask;
+	private boolean mIndexPending;
+	private boolean mShown;
+
+	// stack traces of the expanded rows by sequence number
+	private final HashMap<Long, String> mExpanded = new HashMap<Long, String>();
+
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<Integer, LogEntry[]> mPages = new LinkedHashMap<Integer, LogEntry[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, LogEntry[]> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	/**
+	 * @param onShown run once the rows of a newly shown buffer or search
+	 *        have been indexed
+	 */
+	LogAdapter(Context context, Runnable onShown) {
+		mContext = context;
+		mOnShown = onShown;
+	}
+
+	/**
+	 * Show a list of entries that are not in the buffer, such as the
+	 * previous session.
+	 *
+	 * @param entries the entries, newest first
+	 */
+	void setEntries(List<LogEntry> entries, FilterPredicate predicate) {
+		mEntries = new ArrayList<LogEntry>();
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			LogEntry e = entries.get(i);
+			if (predicate.accept(e.getLevel(), e.getTagId(), e.getText())) {
+				mEntries.add(e);
+			}
+		}
+		mBuffer = null;
+		mQuery = null;
+		mSeqCount = 0;
+		cancelIndex();
+		mPages.clear();
+		mExpanded.clear();
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Show the entries of the buffer that match the filter. The rows are
+	 * added once they have been indexed.
+	 */
+	void setBuffer(LogBuffer buffer, FilterPredicate predicate) {
+		show(buffer, predicate, null, buffer.tail());
+		index();
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Show the results of a search of the buffer that match the filter.
+	 * Entries appended after the search are checked against the query as
+	 * they are indexed.
+	 */
+	void setSearchResults(LogBuffer buffer, FilterPredicate predicate, SearchQuery query, SearchIndex.Results results) {
+		show(buffer, predicate, query, results.next);
+		if (mSeqs.length < results.count) {
+			mSeqs = new long[results.count];
+		}
+		for (int i = 0; i < results.count; i++) {
+			long seq = results.seqs[i];
+			int entryLevel = buffer.levelOf(seq);
+			int entryTagId = buffer.tagIdOf(seq);
+			if (entryLevel >= 0 && entryTagId >= 0 && predicate.accept(entryLevel, entryTagId, buffer, seq)) {
+				mSeqs[mSeqCount++] = seq;
+			}
+		}
+		index();
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * @return the buffer shown by this adapter, or null if it shows a list
+	 */
+	LogBuffer getBuffer() {
+		return mBuffer;
+	}
+
+	/**
+	 * Start indexing the entries appended to the buffer since the last call,
+	 * whose rows are added when it is done, and drop rows whose entries have
+	 * since been evicted once they make up a large part of the list.
+	 *
+	 * @return the number of rows removed from the start of the list
+	 */
+	int update() {
+		if (mBuffer == null) {
+			return 0;
+		}
+		index();
+
+		int removed = 0;
+		long tail = mBuffer.tail();
+		while (removed < mSeqCount && mSeqs[removed] < tail) {
+			removed++;
+		}
+		if (removed > 0 && removed >= mSeqCount / 2) {
+			System.arraycopy(mSeqs, removed, mSeqs, 0, mSeqCount - removed);
+			mSeqCount -= removed;
+			mPages.clear();
+		} else {
+			removed = 0;
+			// the newest entry may have been repeated since
+			mPages.remove((mSeqCount - 1) / PAGE_SIZE);
+		}
+		notifyDataSetChanged();
+		return removed;
+	}
+
+	/**
+	 * Show or hide the stack trace of the entry at the position, if it has
+	 * one. An expanded row shows a placeholder until the stack trace is 
+	 * passed to {@link #setStackTrace(LogEntry, String)}.
+	 *
+	 * @return the entry whose stack trace should now be loaded, or null
+	 */
+	LogEntry toggleExpanded(int position) {
+		LogEntry e = getItem(position);
+		if (e == null || !e.hasStackTrace()) {
+			return null;
+		}
+		Long key = e.getSequence();
+		boolean expand = (mExpanded.remove(key) == null);
+		if (expand) {
+			mExpanded.put(key, LOADING);
+		}
+		notifyDataSetChanged();
+		return expand ? e : null;
+	}
+
+	/**
+	 * Show the loaded stack trace of an entry, unless its row has been
+	 * collapsed or the list replaced meanwhile.
+	 */
+	void setStackTrace(LogEntry e, String stackTrace) {
+		Long key = e.getSequence();
+		if (mExpanded.get(key) == LOADING) {
+			mExpanded.put(key, stackTrace);
+			notifyDataSetChanged();
+		}
+	}
+
+	public int getCount() {
+		return mEntries.size() + mSeqCount;
+	}
+
+	public LogEntry getItem(int position) {
+		if (position < mEntries.size()) {
+			return mEntries.get(position);
+		}
+		int index = position - mEntries.size();
+		Integer page = index / PAGE_SIZE;
+		LogEntry[] entries = mPages.get(page);
+		if (entries == null) {
+			entries = loadPage(page);
+			mPages.put(page, entries);
+		}
+		return entries[index % PAGE_SIZE];
+	}
+
+	public long getItemId(int position) {
+		return position;
+	}
+
+	public View getView(int position, View convertView, ViewGroup parent) {
+		TextView tv = (TextView) convertView;
+		if (tv == null) {
+			tv = new TextView(mContext);
+			tv.setTypeface(Typeface.MONOSPACE);
+			tv.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+			tv.setPadding(4, 1, 4, 1);
+		}
+		LogEntry e = getItem(position);
+		String stackTrace = (e == null || mExpanded.isEmpty()) ? null : mExpanded.get(e.getSequence());
+		if (stackTrace != null) {
+			tv.setText(e.getDisplayText() + "\n" + stackTrace);
+			tv.setTextColor(e.getColor());
+		} else if (e != null) {
+			tv.setText(e.getDisplayText());
+			tv.setTextColor(e.getColor());
+		} else {
+			// evicted since the index was built
+			tv.setText("");
+		}
+		return tv;
+	}
+
+	private void show(LogBuffer buffer, FilterPredicate predicate, SearchQuery query, long next) {
+		ArrayList<LogEntry> reserved = buffer.reservedBefore(buffer.tail());
+		mEntries = new ArrayList<LogEntry>();
+		for (int i = reserved.size() - 1; i >= 0; i--) {
+			LogEntry e = reserved.get(i);
+			if (predicate.accept(e.getLevel(), e.getTagId(), e.getText())
+					&& (query == null || query.matches(e.getText()))) {
+				mEntries.add(e);
+			}
+		}
+
+		mBuffer = buffer;
+		mPredicate = predicate;
+		mQuery = query;
+		mNext = next;
+		mSeqCount = 0;
+		mShown = false;
+		cancelIndex();
+		mPages.clear();
+		mExpanded.clear();
+	}
+
+	/**
+	 * Index the entries appended since the last index on a background
+	 * thread, or once the one running is done.
+	 */
+	private void index() {
+		if (mIndexTask != null) {
+			mIndexPending = true;
+			return;
+		}
+		mIndexTask = new IndexTask(mBuffer, mPredicate, mQuery, mNext);
+		mIndexTask.execute();
+	}
+
+	private void cancelIndex() {
+		if (mIndexTask != null) {
+			mIndexTask.cancel(false);
+			mIndexTask = null;
+		}
+		mIndexPending = false;
+	}
+
+	private void indexed(long[] seqs, int count, long next) {
+		int previousCount = mSeqCount;
+		if (mSeqCount + count > mSeqs.length) {
+			long[] grown = new long[Math.max(64, Math.max(mSeqs.length * 2, mSeqCount + count))];
+			System.arraycopy(mSeqs, 0, grown, 0, mSeqCount);
+			mSeqs = grown;
+		}
+		System.arraycopy(seqs, 0, mSeqs, mSeqCount, count);
+		mSeqCount += count;
+		mNext = next;
+		if (count > 0) {
+			// the last page may have been loaded while it was partly empty
+			mPages.remove(previousCount / PAGE_SIZE);
+			notifyDataSetChanged();
+		}
+		if (!mShown) {
+			mShown = true;
+			mOnShown.run();
+		}
+	}
+
+	/**
+	 * Finds the sequence numbers of the matching entries from a point in
+	 * the buffer up to its newest published entry.
+	 */
+	private class IndexTask extends AsyncTask<Void, Void, Void> {
+
+		private final LogBuffer mBuffer;
+		private final FilterPredicate mPredicate;
+		private final SearchQuery mQuery;
+		private long mPosition;
+		private long[] mFound = new long[64];
+		private int mFoundCount;
+
+		IndexTask(LogBuffer buffer, FilterPredicate predicate, SearchQuery query, long next) {
+			mBuffer = buffer;
+			mPredicate = predicate;
+			mQuery = query;
+			mPosition = next;
+		}
+
+		@Override
+		protected Void doInBackground(Void... params) {
+			long head = mBuffer.head();
+			long seq = Math.max(mPosition, mBuffer.tail());
+			while (seq < head && !isCancelled()) {
+				int entryLevel = mBuffer.levelOf(seq);
+				int entryTagId = mBuffer.tagIdOf(seq);
+				if (entryLevel < 0 || entryTagId < 0) {
+					// claimed but not yet published, pick it up on the next update
+					break;
+				}
+				if (mPredicate.accept(entryLevel, entryTagId, mBuffer, seq)
+						&& (mQuery == null || mQuery.matches(mBuffer.textOf(seq)))) {
+					if (mFoundCount == mFound.length) {
+						long[] grown = new long[mFound.length * 2];
+						System.arraycopy(mFound, 0, grown, 0, mFoundCount);
+						mFound = grown;
+					}
+					mFound[mFoundCount++] = seq;
+				}
+				seq++;
+			}
+			mPosition = seq;
+			return null;
+		}
+
+		@Override
+		protected void onPostExecute(Void result) {
+			if (mIndexTask != this) {
+				return;
+			}
+			mIndexTask = null;
+			indexed(mFound, mFoundCount, mPosition);
+			if (mIndexPending) {
+				mIndexPending = false;
+				index();
+			}
+		}
+
+	}
+
+	private LogEntry[] loadPage(int page) {
+		LogEntry[] entries = new LogEntry[PAGE_SIZE];
+		int start = page * PAGE_SIZE;
+		int end = Math.min(start + PAGE_SIZE, mSeqCount);
+		for (int i = start; i < end; i++) {
+			entries[i - start] = mBuffer.get(mSeqs[i]);
+		}
+		return entries;
+	}
+
+}
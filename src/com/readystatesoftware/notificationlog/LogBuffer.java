@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed capacity ring buffer of log entries. Any number of threads may append
+ * concurrently without taking a lock. Once the buffer is full each append
+ * overwrites the oldest entry.
+ *
+ * <p>Entries are stored column by column in primitive arrays rather than as
+ * objects, so scanning levels or tags touches contiguous memory and a large
+ * buffer costs little more than its message strings. {@link LogEntry} objects
+ * are only created when an entry is read with {@link #get(long)} or
+ * {@link #snapshot()}.
+ *
+ * <p>Each slot records the sequence number of the entry it holds. A writer
+ * marks the slot as busy, fills in the columns and then publishes the
+ * sequence number; a reader checks the sequence number before and after
+ * reading the columns and discards the read if the slot changed in between.
+ *
+ * <p>When the {@link BufferPolicy} sets a byte budget, writers also trim the
+ * oldest entries until the estimated size of the buffer fits the budget.
+ * Trimming claims a slot the same way a writer does, so the two never
+ * modify a slot at the same time. Entries of reserved levels are also kept
+ * in a small {@link LevelReserve} once they leave the main buffer.
+ *
+ * <p>An entry that repeats the newest one is not appended; {@link #repeat}
+ * increments the newest entry's count instead, so a storm of identical
+ * lines takes a single slot.
+ */
+final class LogBuffer {
+
+	private static final long EMPTY = -1;
+	private static final long BUSY = -2;
+	private static final long TRIMMING = -3;
+
+	private final int mCapacity;
+	private final long mTextBudget;
+	private final AtomicLong mHead = new AtomicLong();
+	private final AtomicLong mFloor = new AtomicLong();
+	private final AtomicLong mTextBytes = new AtomicLong();
+	private final AtomicLongArray mPublished;
+	private final byte[] mLevels;
+	private final long[] mTimes;
+	private final AtomicLongArray mLastTimes;
+	private final AtomicIntegerArray mCounts;
+	private final int[] mTagIds;
+	private final String[] mTexts;
+	private final Throwable[] mThrowables;
+	private final int[] mSizes;
+	private final LevelReserve[] mReserves;
+
+	LogBuffer(int capacity) {
+		this(BufferPolicy.ofEntries(capacity));
+	}
+
+	LogBuffer(BufferPolicy policy) {
+		int capacity = policy.getSlots();
+		mCapacity = capacity;
+		mPublished = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			mPublished.set(i, EMPTY);
+		}
+		mLevels = new byte[capacity];
+		mTimes = new long[capacity];
+		mLastTimes = new AtomicLongArray(capacity);
+		mCounts = new AtomicIntegerArray(capacity);
+		mTagIds = new int[capacity];
+		mTexts = new String[capacity];
+		mThrowables = new Throwable[capacity];
+		mSizes = new int[capacity];
+		mReserves = new LevelReserve[policy.getMaxReservedLevel() + 1];
+		long slots = capacity;
+		for (int level = 0; level < mReserves.length; level++) {
+			int count = policy.getReserve(level);
+			if (count > 0) {
+				mReserves[level] = new LevelReserve(count);
+				slots += count;
+			}
+		}
+		mTextBudget = (policy.getMaxBytes() < 0) ? -1 : policy.getMaxBytes() - slots * BufferPolicy.SLOT_BYTES;
+	}
+
+	/**
+	 * Append an entry to the buffer in O(1).
+	 *
+	 * @return the sequence number of the new entry
+	 */
+	long add(int level, long time, int tagId, String text) {
+		return add(level, time, tagId, text, null);
+	}
+
+	/**
+	 * Append an entry that keeps a reference to an exception.
+	 *
+	 * @return the sequence number of the new entry
+	 */
+	long add(int level, long time, int tagId, String text, Throwable tr) {
+		// claim a sequence number, then fill in and publish its slot
+		long seq = mHead.getAndIncrement();
+		int i = indexOf(seq);
+		if (claim(i, seq)) {
+			int size = sizeOf(text) + ((tr == null) ? 0 : BufferPolicy.THROWABLE_BYTES);
+			mTextBytes.addAndGet(size - mSizes[i]);
+			mSizes[i] = size;
+			mLevels[i] = (byte) level;
+			mTimes[i] = time;
+			mLastTimes.set(i, time);
+			mCounts.set(i, 1);
+			mTagIds[i] = tagId;
+			mTexts[i] = text;
+			mThrowables[i] = tr;
+			mPublished.set(i, seq);
+		}
+
+		if (level >= 0 && level < mReserves.length && mReserves[level] != null) {
+			LogEntry e = new LogEntry(level, time, tagId, text);
+			e.setSequence(seq);
+			e.setThrowable(tr);
+			int size = sizeOf(text) + ((tr == null) ? 0 : BufferPolicy.THROWABLE_BYTES);
+			mTextBytes.addAndGet(size - mReserves[level].add(e, size));
+		}
+		if (mTextBudget >= 0) {
+			while (mTextBytes.get() > mTextBudget && trimOldest()) {
+				// keep trimming
+			}
+		}
+		return seq;
+	}
+
+	/**
+	 * Count another occurrence of the newest entry if the given entry is
+	 * identical to it.
+	 *
+	 * <p>When several threads log at once the newest entry may change
+	 * during the check, in which case an occurrence can be counted against
+	 * an entry that is no longer the newest. Nothing is lost either way.
+	 *
+	 * @return true if the entry was counted, false if it must be added
+	 */
+	boolean repeat(int level, long time, int tagId, String text) {
+		long seq = mHead.get() - 1;
+		if (seq < 0) {
+			return false;
+		}
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq || mLevels[i] != level || mTagIds[i] != tagId
+				|| mThrowables[i] != null) {
+			return false;
+		}
+		String last = mTexts[i];
+		if (last != text && (last == null || !last.equals(text))) {
+			return false;
+		}
+		if (mPublished.get(i) != seq) {
+			return false;
+		}
+		mCounts.incrementAndGet(i);
+		mLastTimes.set(i, time);
+		return true;
+	}
+
+	/**
+	 * Overwrite the repeat count of an entry, for copies of a buffer that
+	 * live in another process.
+	 */
+	void setRepeats(long seq, int count, long lastTime) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) == seq) {
+			mCounts.set(i, count);
+			mLastTimes.set(i, lastTime);
+		}
+	}
+
+	/**
+	 * Take a snapshot of the buffer without blocking writers. Entries
+	 * that are overwritten while the snapshot is taken, or that have
+	 * been claimed but not yet published, are left out.
+	 *
+	 * @return the buffered entries, newest first
+	 */
+	ArrayList<LogEntry> snapshot() {
+		long head = mHead.get();
+		long tail = Math.max(mFloor.get(), head - mCapacity);
+		ArrayList<LogEntry> entries = new ArrayList<LogEntry>((int) Math.max(0, head - tail));
+		for (long seq = head - 1; seq >= tail; seq--) {
+			LogEntry e = get(seq);
+			if (e != null) {
+				entries.add(e);
+			}
+		}
+
+		// append reserved entries that have left the main buffer
+		entries.addAll(reservedBefore(tail));
+		return entries;
+	}
+
+	/**
+	 * @return the reserved entries older than the given sequence number,
+	 *         newest first
+	 */
+	ArrayList<LogEntry> reservedBefore(long seq) {
+		ArrayList<LogEntry> reserved = new ArrayList<LogEntry>();
+		for (LevelReserve reserve : mReserves) {
+			if (reserve != null) {
+				reserve.collectBefore(seq, reserved);
+			}
+		}
+		Collections.sort(reserved, NEWEST_FIRST);
+		return reserved;
+	}
+
+	/**
+	 * Get the entry with the given sequence number.
+	 *
+	 * @return a new entry object, or null if it has been overwritten or has
+	 *         not been published yet
+	 */
+	LogEntry get(long seq) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq) {
+			return null;
+		}
+		LogEntry e = new LogEntry(mLevels[i], mTimes[i], mTagIds[i], mTexts[i]);
+		int count = mCounts.get(i);
+		long lastTime = mLastTimes.get(i);
+		Throwable tr = mThrowables[i];
+		if (mPublished.get(i) != seq) {
+			return null;
+		}
+		e.setSequence(seq);
+		e.setRepeats(count, lastTime);
+		e.setThrowable(tr);
+		return e;
+	}
+
+	/**
+	 * Append the entry with the given sequence number in the display format
+	 * of {@link LogEntry}, without creating an entry object.
+	 *
+	 * @return false, leaving the builder unchanged, if the entry has been
+	 *         overwritten or has not been published yet
+	 */
+	boolean appendTo(long seq, StringBuilder sb) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq) {
+			return false;
+		}
+		int length = sb.length();
+		LogEntry.appendTo(sb, mTimes[i], TagDictionary.nameOf(mTagIds[i]), mTexts[i],
+				mCounts.get(i), mLastTimes.get(i), mThrowables[i] != null);
+		if (mPublished.get(i) != seq) {
+			sb.setLength(length);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the message of the entry, or null if it is not in the buffer
+	 */
+	String textOf(long seq) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq) {
+			return null;
+		}
+		String text = mTexts[i];
+		return (mPublished.get(i) == seq) ? text : null;
+	}
+
+	/**
+	 * @return the level of the entry, or -1 if it is not in the buffer
+	 */
+	int levelOf(long seq) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq) {
+			return -1;
+		}
+		int level = mLevels[i];
+		return (mPublished.get(i) == seq) ? level : -1;
+	}
+
+	/**
+	 * @return the tag id of the entry, or -1 if it is not in the buffer
+	 */
+	int tagIdOf(long seq) {
+		int i = indexOf(seq);
+		if (mPublished.get(i) != seq) {
+			return -1;
+		}
+		int tagId = mTagIds[i];
+		return (mPublished.get(i) == seq) ? tagId : -1;
+	}
+
+	/**
+	 * @return the sequence number the next appended entry will receive
+	 */
+	long head() {
+		return mHead.get();
+	}
+
+	/**
+	 * @return the sequence number of the oldest entry still in the buffer
+	 */
+	long tail() {
+		return Math.max(mFloor.get(), mHead.get() - mCapacity);
+	}
+
+	int capacity() {
+		return mCapacity;
+	}
+
+	/**
+	 * @return the approximate number of entries in the main buffer
+	 */
+	int size() {
+		return (int) Math.max(0, mHead.get() - tail());
+	}
+
+	/**
+	 * @return the estimated memory used by the buffer in bytes
+	 */
+	long memoryUsage() {
+		long bytes = (long) mCapacity * BufferPolicy.SLOT_BYTES + mTextBytes.get();
+		for (LevelReserve reserve : mReserves) {
+			if (reserve != null) {
+				bytes += reserve.memoryUsage();
+			}
+		}
+		return bytes;
+	}
+
+	private int indexOf(long seq) {
+		return (int) (seq % mCapacity);
+	}
+
+	/**
+	 * Take ownership of a slot for writing. Waits while a trimmer holds
+	 * the slot, which is for a handful of instructions, or while a writer
+	 * a whole lap ahead or behind is filling it in, which only happens
+	 * when the buffer wraps faster than one append takes.
+	 *
+	 * @return false if a newer entry has already been published to the
+	 *         slot, in which case this one counts as evicted and must not
+	 *         overwrite it
+	 */
+	private boolean claim(int i, long seq) {
+		long current;
+		do {
+			current = mPublished.get(i);
+			if (current > seq) {
+				return false;
+			}
+		} while (current == TRIMMING || current == BUSY || !mPublished.compareAndSet(i, current, BUSY));
+		return true;
+	}
+
+	/**
+	 * Evict the oldest entry to reclaim its memory.
+	 *
+	 * @return false if there is nothing left that may be trimmed
+	 */
+	private boolean trimOldest() {
+		long head = mHead.get();
+		long floor = mFloor.get();
+		long tail = Math.max(floor, head - mCapacity);
+		if (tail >= head - 1) {
+			// always keep the newest entry
+			return false;
+		}
+		int i = indexOf(tail);
+		long current = mPublished.get(i);
+		if (current == BUSY || current == TRIMMING) {
+			// its writer or another trimmer has it, leave it to them
+			return false;
+		}
+		if (current == EMPTY || current > tail) {
+			// nothing of this entry left to reclaim
+			mFloor.compareAndSet(floor, tail + 1);
+			return true;
+		}
+		// take the slot before moving the floor past it, so the floor only
+		// moves over entries whose memory is reclaimed
+		if (!mPublished.compareAndSet(i, current, TRIMMING)) {
+			return true;
+		}
+		if (!mFloor.compareAndSet(floor, tail + 1)) {
+			// another writer moved the floor, try again
+			mPublished.set(i, current);
+			return true;
+		}
+		mTextBytes.addAndGet(-mSizes[i]);
+		mSizes[i] = 0;
+		mTexts[i] = null;
+		mThrowables[i] = null;
+		mPublished.set(i, EMPTY);
+		return true;
+	}
+
+	private static int sizeOf(String text) {
+		return BufferPolicy.STRING_BYTES + ((text == null) ? 0 : text.length() * 2);
+	}
+
+	private static final Comparator<LogEntry> NEWEST_FIRST = new Comparator<LogEntry>() {
+		public int compare(LogEntry lhs, LogEntry rhs) {
+			long l = lhs.getSequence();
+			long r = rhs.getSequence();
+			return (l > r) ? -1 : ((l < r) ? 1 : 0);
+		}
+	};
+
+	/**
+	 * The most recent entries of one level. Reserved levels are expected to
+	 * be rare, such as errors, so entries are kept as objects under a lock.
+	 * Their text is charged to the buffer's byte count like that of the
+	 * main entries, even while the same entry is also in the main buffer.
+	 */
+	private static final class LevelReserve {
+
+		private final LogEntry[] mEntries;
+		private final int[] mSizes;
+		private int mNext;
+
+		LevelReserve(int count) {
+			mEntries = new LogEntry[count];
+			mSizes = new int[count];
+		}
+
+		/**
+		 * @return the size of the entry it replaced, or 0
+		 */
+		synchronized int add(LogEntry e, int size) {
+			int replaced = mSizes[mNext];
+			mEntries[mNext] = e;
+			mSizes[mNext] = size;
+			mNext = (mNext + 1) % mEntries.length;
+			return replaced;
+		}
+
+		synchronized void collectBefore(long seq, ArrayList<LogEntry> out) {
+			for (LogEntry e : mEntries) {
+				if (e != null && e.getSequence() < seq) {
+					out.add(e);
+				}
+			}
+		}
+
+		long memoryUsage() {
+			// the text is counted in the buffer's byte count
+			return (long) mEntries.length * BufferPolicy.SLOT_BYTES;
+		}
+
+	}
+
+}
@@ -16,36 +16,56 @@
 
 package com.readystatesoftware.notificationlog;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.TimeZone;
 
-import android.annotation.SuppressLint;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 public class LogEntry implements Parcelable {
 
-	@SuppressLint("SimpleDateFormat")
-	private static final SimpleDateFormat FMT_LOG = new SimpleDateFormat("HH:mm:ss:SSS");
 	private static final int TAG_LENGTH = 10;
+	private static final char ELLIPSIS = '\u2026';
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	// the time zone in effect when the class was loaded, like the
+	// SimpleDateFormat this replaces
+	private static final TimeZone sTimeZone = TimeZone.getDefault();
 	
 	private int mLevel;
 	private long mTime;
-	private String mTag;
+	private int mTagId;
 	private String mText;
+	private long mSeq = -1;
+	private int mCount = 1;
+	private long mLastTime;
+	private Throwable mThrowable;
+	
+	// the stack trace, formatted on first use
+	private String mStackTrace;
+	
+	// rendered lazily; a racing thread at worst renders it twice
+	private String mDisplayText;
 	
 	public LogEntry(int level, long time, String tag, String text) {
+		this(level, time, TagDictionary.intern(tag), text);
+	}
+	
+	LogEntry(int level, long time, int tagId, String text) {
 		mLevel = level;
 		mTime = time;
-		mTag = tag;
+		mTagId = tagId;
 		mText = text;
+		mLastTime = time;
 	}
 	
 	protected LogEntry(Parcel in) {
         mLevel = in.readInt();
         mTime = in.readLong();
-        mTag = in.readString();
+        mTagId = TagDictionary.intern(in.readString());
         mText = in.readString();
+        mCount = in.readInt();
+        mLastTime = in.readLong();
+        mStackTrace = in.readString();
     }
 
     public int describeContents() {
@@ -55,8 +75,11 @@ public class LogEntry implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeInt(mLevel);
         dest.writeLong(mTime);
-        dest.writeString(mTag);
+        dest.writeString(getTag());
         dest.writeString(mText);
+        dest.writeInt(mCount);
+        dest.writeLong(mLastTime);
+        dest.writeString(getStackTrace());
     }
 
     public static final Parcelable.Creator<LogEntry> CREATOR = new Parcelable.Creator<LogEntry>() {
@@ -69,46 +92,125 @@ public class LogEntry implements Parcelable {
         }
     };
     
-    private String getColor(int level) {
+    private static int getColor(int level) {
     	switch (level) {
 		case Log.VERBOSE:
-			return "#000000";
+			return 0x000000;
 		case Log.DEBUG:
-			return "#0000FF";
+			return 0x0000FF;
 		case Log.INFO:
-			return "#367000";
+			return 0x367000;
 		case Log.WARN:
-			return "#F5B800";
+			return 0xF5B800;
 		case Log.ERROR:
-			return "#FF0000";
+			return 0xFF0000;
 		case Log.ASSERT:
-			return "#F500B8";
+			return 0xF500B8;
 		default:
-			return "#703A00";
+			return 0x703A00;
 		}
     }
+    
+    /**
+     * @return the display color of this entry's level as an ARGB int
+     */
+    int getColor() {
+    	return 0xFF000000 | getColor(mLevel);
+    }
+    
+    /**
+     * @return the entry as a single line of plain text, as shown by {@link LogActivity}
+     */
+    String getDisplayText() {
+    	String text = mDisplayText;
+    	if (text == null) {
+    		StringBuilder sb = new StringBuilder(TAG_LENGTH + 14 + ((mText == null) ? 4 : mText.length()));
+    		appendTo(sb);
+    		text = sb.toString();
+    		mDisplayText = text;
+    	}
+    	return text;
+    }
+    
+    /**
+     * Append the entry as a single line of plain text, without creating
+     * any intermediate objects.
+     */
+    public void appendTo(StringBuilder sb) {
+    	String text = mDisplayText;
+    	if (text != null) {
+    		sb.append(text);
+    	} else {
+    		appendTo(sb, mTime, getTag(), mText, mCount, mLastTime, hasStackTrace());
+    	}
+    }
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		Date d = new Date(mTime);
-		
-		sb.append("<span style='color:" + getColor(mLevel) + ";'>");
-		sb.append(FMT_LOG.format(d));
-		sb.append(" ");
-		if (mTag.length() > TAG_LENGTH) {
-			sb.append(mTag.substring(0, TAG_LENGTH-1) + "");
-		} else if (mTag.length() < TAG_LENGTH) {
-			sb.append(mTag + "               ".substring(0, TAG_LENGTH - mTag.length()));
-		} else {
-			sb.append(mTag);
+		String text = getDisplayText();
+		StringBuilder sb = new StringBuilder(text.length() + 40);
+		sb.append("<span style='color:#");
+		int color = getColor(mLevel);
+		for (int shift = 20; shift >= 0; shift -= 4) {
+			sb.append(HEX[(color >> shift) & 0xF]);
 		}
-		sb.append(" ");
-		sb.append(mText);
+		sb.append(";'>");
+		sb.append(text);
 		sb.append("</span><br/>");
-		
 		return sb.toString();
 	}
+	
+	/**
+	 * Append a line in the display format, e.g.
+	 * <pre>13:37:00:042 MyTag      message</pre>
+	 * or for a repeated entry
+	 * <pre>13:37:00:042 MyTag      message (x12, last 13:37:01:500)</pre>
+	 * An entry with a stack trace ends in " [+]".
+	 */
+	static void appendTo(StringBuilder sb, long time, String tag, String text, int count, long lastTime, boolean hasStackTrace) {
+		appendTime(sb, time);
+		sb.append(' ');
+		
+		int length = tag.length();
+		if (length > TAG_LENGTH) {
+			sb.append(tag, 0, TAG_LENGTH - 1);
+			sb.append(ELLIPSIS);
+		} else {
+			sb.append(tag);
+			for (int i = length; i < TAG_LENGTH; i++) {
+				sb.append(' ');
+			}
+		}
+		sb.append(' ');
+		sb.append(text);
+		if (count > 1) {
+			sb.append(" (x").append(count).append(", last ");
+			appendTime(sb, lastTime);
+			sb.append(')');
+		}
+		if (hasStackTrace) {
+			sb.append(" [+]");
+		}
+	}
+	
+	private static void appendTime(StringBuilder sb, long time) {
+		long local = time + sTimeZone.getOffset(time);
+		int millisOfDay = (int) (((local % 86400000L) + 86400000L) % 86400000L);
+		append2(sb, millisOfDay / 3600000);
+		sb.append(':');
+		append2(sb, (millisOfDay / 60000) % 60);
+		sb.append(':');
+		append2(sb, (millisOfDay / 1000) % 60);
+		sb.append(':');
+		int millis = millisOfDay % 1000;
+		sb.append((char) ('0' + millis / 100));
+		append2(sb, millis % 100);
+	}
+	
+	private static void append2(StringBuilder sb, int value) {
+		sb.append((char) ('0' + value / 10));
+		sb.append((char) ('0' + value % 10));
+	}
 
 	public int getLevel() {
 		return mLevel;
@@ -119,11 +221,73 @@ public class LogEntry implements Parcelable {
 	}
 
 	public String getTag() {
-		return mTag;
+		return TagDictionary.nameOf(mTagId);
+	}
+	
+	int getTagId() {
+		return mTagId;
 	}
 
 	public String getText() {
 		return mText;
 	}
 	
+	/**
+	 * @return the number of consecutive times this entry was logged
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return the time of the last occurrence, the same as {@link #getTime()}
+	 *         unless the entry was repeated
+	 */
+	public long getLastTime() {
+		return mLastTime;
+	}
+	
+	/**
+	 * @return the exception logged with this entry, or null. This is null 
+	 *         for an entry read from a Parcel, which only keeps the stack 
+	 *         trace.
+	 */
+	public Throwable getThrowable() {
+		return mThrowable;
+	}
+	
+	/**
+	 * @return the stack trace of the exception logged with this entry, or 
+	 *         null. It is only formatted the first time it is requested.
+	 */
+	public String getStackTrace() {
+		String stackTrace = mStackTrace;
+		if (stackTrace == null && mThrowable != null) {
+			stackTrace = Log.getStackTraceString(mThrowable);
+			mStackTrace = stackTrace;
+		}
+		return stackTrace;
+	}
+	
+	boolean hasStackTrace() {
+		return mThrowable != null || mStackTrace != null;
+	}
+	
+	long getSequence() {
+		return mSeq;
+	}
+	
+	void setSequence(long seq) {
+		mSeq = seq;
+	}
+	
+	void setThrowable(Throwable tr) {
+		mThrowable = tr;
+	}
+	
+	void setRepeats(int count, long lastTime) {
+		mCount = count;
+		mLastTime = lastTime;
+	}
+	
 }
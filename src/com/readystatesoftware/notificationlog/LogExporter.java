@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+
+/**
+ * Streams log entries to a channel one at a time through a fixed size
+ * buffer, so the size of an export does not depend on the size of the log.
+ *
+ * <p>The binary format starts with the magic number "NLOG" and a version,
+ * followed by one record per entry with the fields in the order of
+ * {@link LogEntry#writeToParcel}: level (int), time (long), tag, text,
+ * count (int), last time (long) and stack trace. Numbers are big-endian and
+ * strings are an int byte length, -1 for null, followed by UTF-8 bytes.
+ */
+final class LogExporter {
+
+	static final int BINARY_MAGIC = 0x4E4C4F47;
+	static final int BINARY_VERSION = 1;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final String LEVELS = "??VDIWEA";
+
+	private final WritableByteChannel mChannel;
+	private final int mFormat;
+	private final ByteBuffer mOut = ByteBuffer.allocate(CHUNK_SIZE);
+	private final CharsetEncoder mEncoder = Charset.forName("UTF-8").newEncoder();
+	private final StringBuilder mLine = new StringBuilder(256);
+	private ByteBuffer mScratch = ByteBuffer.allocate(1024);
+	private int mCount;
+
+	/**
+	 * @param format one of {@link Log#EXPORT_TEXT}, {@link Log#EXPORT_JSON}
+	 *        or {@link Log#EXPORT_BINARY}
+	 */
+	LogExporter(WritableByteChannel channel, int format) throws IOException {
+		this(channel, format, true);
+	}
+
+	/**
+	 * @param header false to leave out the binary header, when appending
+	 *        to a file that already has one
+	 */
+	LogExporter(WritableByteChannel channel, int format, boolean header) throws IOException {
+		if (format != Log.EXPORT_TEXT && format != Log.EXPORT_JSON && format != Log.EXPORT_BINARY) {
+			throw new IllegalArgumentException("unknown format " + format);
+		}
+		mChannel = channel;
+		mFormat = format;
+		if (format == Log.EXPORT_BINARY && header) {
+			mOut.putInt(BINARY_MAGIC);
+			mOut.putInt(BINARY_VERSION);
+		}
+	}
+
+	/**
+	 * Write the reserved entries and then the main buffer, oldest first.
+	 *
+	 * @return the number of entries written
+	 */
+	int writeBuffer(LogBuffer buffer) throws IOException {
+		long tail = buffer.tail();
+		ArrayList<LogEntry> reserved = buffer.reservedBefore(tail);
+		for (int i = reserved.size() - 1; i >= 0; i--) {
+			write(reserved.get(i));
+		}
+		long head = buffer.head();
+		for (long seq = tail; seq < head; seq++) {
+			LogEntry e = buffer.get(seq);
+			if (e != null) {
+				write(e);
+			}
+		}
+		return mCount;
+	}
+
+	void write(LogEntry e) throws IOException {
+		switch (mFormat) {
+		case Log.EXPORT_TEXT:
+			mLine.setLength(0);
+			e.appendTo(mLine);
+			String stackTrace = e.getStackTrace();
+			if (stackTrace != null) {
+				mLine.append('\n').append(stackTrace);
+			}
+			mLine.append('\n');
+			writeChars(mLine);
+			break;
+		case Log.EXPORT_JSON:
+			mLine.setLength(0);
+			mLine.append("{\"time\":").append(e.getTime());
+			mLine.append(",\"level\":\"").append(levelName(e.getLevel())).append('"');
+			mLine.append(",\"tag\":");
+			appendJson(mLine, e.getTag());
+			mLine.append(",\"text\":");
+			appendJson(mLine, e.getText());
+			if (e.getCount() > 1) {
+				mLine.append(",\"count\":").append(e.getCount());
+				mLine.append(",\"lastTime\":").append(e.getLastTime());
+			}
+			if (e.hasStackTrace()) {
+				mLine.append(",\"stackTrace\":");
+				appendJson(mLine, e.getStackTrace());
+			}
+			mLine.append("}\n");
+			writeChars(mLine);
+			break;
+		default:
+			ensure(4 + 8);
+			mOut.putInt(e.getLevel());
+			mOut.putLong(e.getTime());
+			writeString(e.getTag());
+			writeString(e.getText());
+			ensure(4 + 8);
+			mOut.putInt(e.getCount());
+			mOut.putLong(e.getLastTime());
+			writeString(e.getStackTrace());
+			break;
+		}
+		mCount++;
+	}
+
+	/**
+	 * Write out whatever is still buffered. Does not close the channel.
+	 */
+	void finish() throws IOException {
+		flush();
+	}
+
+	private void writeChars(CharSequence chars) throws IOException {
+		CharBuffer in = CharBuffer.wrap(chars);
+		mEncoder.reset();
+		while (true) {
+			CoderResult result = mEncoder.encode(in, mOut, true);
+			if (result.isOverflow()) {
+				flush();
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				// unpaired surrogate, skip it
+				in.position(in.position() + result.length());
+			}
+		}
+		while (mEncoder.flush(mOut).isOverflow()) {
+			flush();
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		if (s == null) {
+			ensure(4);
+			mOut.putInt(-1);
+			return;
+		}
+		// encode into the scratch buffer first to learn the length
+		CharBuffer in = CharBuffer.wrap(s);
+		mEncoder.reset();
+		mScratch.clear();
+		while (true) {
+			CoderResult result = mEncoder.encode(in, mScratch, true);
+			if (result.isOverflow()) {
+				ByteBuffer grown = ByteBuffer.allocate(mScratch.capacity() * 2);
+				mScratch.flip();
+				grown.put(mScratch);
+				mScratch = grown;
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				in.position(in.position() + result.length());
+			}
+		}
+		mEncoder.flush(mScratch);
+		mScratch.flip();
+		ensure(4);
+		mOut.putInt(mScratch.remaining());
+		while (mScratch.hasRemaining()) {
+			if (!mOut.hasRemaining()) {
+				flush();
+			}
+			int n = Math.min(mScratch.remaining(), mOut.remaining());
+			int limit = mScratch.limit();
+			mScratch.limit(mScratch.position() + n);
+			mOut.put(mScratch);
+			mScratch.limit(limit);
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (mOut.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		mOut.flip();
+		while (mOut.hasRemaining()) {
+			mChannel.write(mOut);
+		}
+		mOut.clear();
+	}
+
+	private static char levelName(int level) {
+		return (level >= 0 && level < LEVELS.length()) ? LEVELS.charAt(level) : 'F';
+	}
+
+	private static void appendJson(StringBuilder sb, String s) {
+		if (s == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append("\\u00");
+					sb.append(Character.forDigit(c >> 4, 16));
+					sb.append(Character.forDigit(c & 0xF, 16));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Describes which log entries are shown in the notification and in
+ * {@link LogActivity}: a minimum level, the tags to include, the tags to
+ * exclude and a text that messages must contain. Filters are immutable;
+ * the {@code with} methods return a modified copy. Pass one to
+ * {@link Log#setLogFilter(LogFilter)}.
+ *
+ * <p>A filter can also be written as a short expression, which is how it is
+ * saved, e.g.
+ * <pre>level:W tag:Network tag:Db -tag:Chatty timeout</pre>
+ * shows warnings and above from the Network and Db tags, except any from
+ * Chatty, whose message contains "timeout". Spaces and backslashes within a
+ * term are escaped with a backslash.
+ */
+public final class LogFilter {
+
+	private static final String LEVELS = "??VDIWEA";
+	// as logcat shows it
+	private static final char WTF_LEVEL = 'F';
+	private static final String[] NO_TAGS = new String[0];
+	private static final LogFilter ALL = new LogFilter(Log.VERBOSE, NO_TAGS, NO_TAGS, null);
+
+	private final int mMinLevel;
+	private final String[] mTags;
+	private final String[] mExcludedTags;
+	private final String mText;
+
+	// compiled on first use, a racing thread at worst compiles it twice
+	private FilterPredicate mPredicate;
+
+	private LogFilter(int minLevel, String[] tags, String[] excludedTags, String text) {
+		mMinLevel = minLevel;
+		mTags = tags;
+		mExcludedTags = excludedTags;
+		mText = text;
+	}
+
+	/**
+	 * @return a filter that accepts every entry
+	 */
+	public static LogFilter all() {
+		return ALL;
+	}
+
+	/**
+	 * Read a filter expression as returned by {@link #toString()}.
+	 *
+	 * @throws IllegalArgumentException if the expression is invalid
+	 */
+	public static LogFilter parse(String expression) {
+		int minLevel = Log.VERBOSE;
+		ArrayList<String> tags = new ArrayList<String>();
+		ArrayList<String> excludedTags = new ArrayList<String>();
+		StringBuilder text = new StringBuilder();
+		for (String term : split(expression)) {
+			if (term.startsWith("level:")) {
+				minLevel = parseLevel(term);
+			} else if (term.startsWith("tag:")) {
+				tags.add(term.substring(4));
+			} else if (term.startsWith("-tag:")) {
+				excludedTags.add(term.substring(5));
+			} else {
+				if (text.length() > 0) {
+					text.append(' ');
+				}
+				text.append(term);
+			}
+		}
+		return new LogFilter(minLevel, toArray(tags), toArray(excludedTags),
+				(text.length() == 0) ? null : text.toString());
+	}
+
+	/**
+	 * @param minLevel the lowest level to show, e.g. {@link Log#WARN}
+	 */
+	public LogFilter withMinLevel(int minLevel) {
+		return new LogFilter(minLevel, mTags, mExcludedTags, mText);
+	}
+
+	/**
+	 * @param tags the tags to show, or none to show all tags
+	 */
+	public LogFilter withTags(String... tags) {
+		return new LogFilter(mMinLevel, copy(tags), mExcludedTags, mText);
+	}
+
+	/**
+	 * @param tags the tags to hide
+	 */
+	public LogFilter withExcludedTags(String... tags) {
+		return new LogFilter(mMinLevel, mTags, copy(tags), mText);
+	}
+
+	/**
+	 * @param text the text that messages must contain, ignoring case, or
+	 *        null to show all messages
+	 */
+	public LogFilter withText(String text) {
+		return new LogFilter(mMinLevel, mTags, mExcludedTags,
+				(text == null || text.length() == 0) ? null : text);
+	}
+
+	public int getMinLevel() {
+		return mMinLevel;
+	}
+
+	public String[] getTags() {
+		return mTags.clone();
+	}
+
+	public String[] getExcludedTags() {
+		return mExcludedTags.clone();
+	}
+
+	public String getText() {
+		return mText;
+	}
+
+	/**
+	 * @return the predicate that applies this filter to buffered entries
+	 */
+	FilterPredicate compile() {
+		FilterPredicate predicate = mPredicate;
+		if (predicate == null) {
+			predicate = new FilterPredicate(mMinLevel, mTags, mExcludedTags, mText);
+			mPredicate = predicate;
+		}
+		return predicate;
+	}
+
+	/**
+	 * @return the filter as an expression that {@link #parse(String)} reads
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if (mMinLevel > Log.VERBOSE && mMinLevel < LEVELS.length()) {
+			sb.append("level:").append(LEVELS.charAt(mMinLevel));
+		} else if (mMinLevel == Log.WTF) {
+			sb.append("level:").append(WTF_LEVEL);
+		} else if (mMinLevel != Log.VERBOSE) {
+			sb.append("level:").append(mMinLevel);
+		}
+		for (String tag : mTags) {
+			appendTerm(sb, "tag:", tag);
+		}
+		for (String tag : mExcludedTags) {
+			appendTerm(sb, "-tag:", tag);
+		}
+		if (mText != null) {
+			appendTerm(sb, "", mText);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof LogFilter)) {
+			return false;
+		}
+		LogFilter other = (LogFilter) o;
+		return mMinLevel == other.mMinLevel
+				&& Arrays.equals(mTags, other.mTags)
+				&& Arrays.equals(mExcludedTags, other.mExcludedTags)
+				&& (mText == null ? other.mText == null : mText.equals(other.mText));
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	private static void appendTerm(StringBuilder sb, String prefix, String value) {
+		if (sb.length() > 0) {
+			sb.append(' ');
+		}
+		sb.append(prefix);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ' ' || c == '\\') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+	}
+
+	private static ArrayList<String> split(String expression) {
+		ArrayList<String> terms = new ArrayList<String>();
+		StringBuilder term = new StringBuilder();
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			if (c == '\\' && i + 1 < expression.length()) {
+				term.append(expression.charAt(++i));
+			} else if (c == ' ') {
+				if (term.length() > 0) {
+					terms.add(term.toString());
+					term.setLength(0);
+				}
+			} else {
+				term.append(c);
+			}
+		}
+		if (term.length() > 0) {
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+
+	private static String[] copy(String[] tags) {
+		if (tags == null || tags.length == 0) {
+			return NO_TAGS;
+		}
+		ArrayList<String> unique = new ArrayList<String>(tags.length);
+		for (String tag : tags) {
+			if (tag != null && !unique.contains(tag)) {
+				unique.add(tag);
+			}
+		}
+		return toArray(unique);
+	}
+
+	/**
+	 * @param term a level term: a letter as shown by logcat, or a number
+	 */
+	private static int parseLevel(String term) {
+		String value = term.substring(6);
+		int level = -1;
+		if (value.length() == 1 && Character.toUpperCase(value.charAt(0)) == WTF_LEVEL) {
+			level = Log.WTF;
+		} else if (value.length() == 1 && !Character.isDigit(value.charAt(0))) {
+			level = LEVELS.indexOf(Character.toUpperCase(value.charAt(0)));
+		} else {
+			try {
+				level = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// invalid
+			}
+		}
+		if (level < Log.VERBOSE) {
+			throw new IllegalArgumentException("invalid level in " + term);
+		}
+		return level;
+	}
+
+	private static String[] toArray(ArrayList<String> list) {
+		return list.isEmpty() ? NO_TAGS : list.toArray(new String[list.size()]);
+	}
+
+}
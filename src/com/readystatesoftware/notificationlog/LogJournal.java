@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Circular journal of log entries in a memory-mapped file. Appending only
+ * copies bytes into the mapping, the kernel writes the pages back on its own,
+ * so the entries written before the process dies are still in the file the
+ * next time it is opened.
+ *
+ * <p>The file starts with a header holding the write position, the position of
+ * the oldest record and the record count, followed by a table of tag names
+ * and the record area. Each record is
+ * <pre>length:short level:byte time:long tagId:short [tagLength:short tag] textLength:short text</pre>
+ * where the tag is only written inline when the tag table is full. A record
+ * length of zero marks the point where the writer wrapped around.
+ */
+final class LogJournal {
+
+	static final int DEFAULT_SIZE = 256 * 1024;
+
+	private static final int MAGIC = 0x4E4C4A31;
+	private static final int VERSION = 1;
+
+	private static final int OFFSET_MAGIC = 0;
+	private static final int OFFSET_VERSION = 4;
+	private static final int OFFSET_SIZE = 8;
+	private static final int OFFSET_HEAD = 12;
+	private static final int OFFSET_TAIL = 16;
+	private static final int OFFSET_COUNT = 20;
+	private static final int OFFSET_TAG_COUNT = 24;
+	private static final int HEADER_SIZE = 32;
+
+	private static final int TAG_SLOTS = 128;
+	private static final int TAG_SLOT_SIZE = 32;
+	private static final int DATA_START = HEADER_SIZE + TAG_SLOTS * TAG_SLOT_SIZE;
+
+	private static final int RECORD_HEADER_SIZE = 2 + 1 + 8 + 2 + 2;
+	private static final int MAX_TAG_BYTES = 64;
+	private static final int MAX_TEXT_BYTES = 2048;
+
+	private final RandomAccessFile mFile;
+	private final MappedByteBuffer mMap;
+	private final int mSize;
+	private final int mMaxTextBytes;
+	private final ArrayList<LogEntry> mPreviousSession;
+	// journal tag slot of each dictionary id, offset by one so zero means unassigned
+	private int[] mTagSlots = new int[64];
+	private int mTagCount;
+	private final byte[] mTagBytes = new byte[MAX_TAG_BYTES];
+	private final byte[] mTextBytes = new byte[MAX_TEXT_BYTES];
+
+	private int mHead;
+	private int mTail;
+	private int mCount;
+	private boolean mClosed;
+
+	private LogJournal(RandomAccessFile file, MappedByteBuffer map, int size) {
+		mFile = file;
+		mMap = map;
+		mSize = size;
+		// keep several records in even a tiny journal
+		mMaxTextBytes = Math.min(MAX_TEXT_BYTES, (size - DATA_START) / 4);
+		mPreviousSession = read();
+		reset();
+	}
+
+	/**
+	 * Open the journal, reading the entries of the previous session and
+	 * starting a new one.
+	 *
+	 * @param file the journal file, created if it does not exist
+	 * @param size the size of the file in bytes
+	 */
+	static LogJournal open(File file, int size) throws IOException {
+		if (size < DATA_START * 2) {
+			throw new IllegalArgumentException("journal size too small");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			return new LogJournal(raf, map, size);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the entries written during the previous session, newest first
+	 */
+	ArrayList<LogEntry> getPreviousSession() {
+		return mPreviousSession;
+	}
+
+	synchronized void append(int level, long time, int tag, String text) {
+		if (mClosed) {
+			return;
+		}
+
+		int tagId = tagIdOf(tag);
+		int tagLength = (tagId < 0) ? encode(TagDictionary.nameOf(tag), mTagBytes) : 0;
+		int textLength = encode(text, mTextBytes, mMaxTextBytes);
+		int length = RECORD_HEADER_SIZE + textLength + ((tagId < 0) ? 2 + tagLength : 0);
+
+		if (mHead + length > mSize) {
+			// the rest of the file is skipped, so evict anything still stored there
+			while (mCount > 0 && mTail >= mHead) {
+				mTail = next(mTail);
+				mCount--;
+			}
+			if (mHead + 2 <= mSize) {
+				mMap.putShort(mHead, (short) 0);
+			}
+			mHead = DATA_START;
+		}
+		// evict the records the new one will overwrite
+		while (mCount > 0 && mTail >= mHead && mTail < mHead + length) {
+			mTail = next(mTail);
+			mCount--;
+		}
+
+		int pos = mHead;
+		mMap.putShort(pos, (short) length);
+		mMap.put(pos + 2, (byte) level);
+		mMap.putLong(pos + 3, time);
+		mMap.putShort(pos + 11, (short) tagId);
+		pos += 13;
+		if (tagId < 0) {
+			mMap.putShort(pos, (short) tagLength);
+			put(pos + 2, mTagBytes, tagLength);
+			pos += 2 + tagLength;
+		}
+		mMap.putShort(pos, (short) textLength);
+		put(pos + 2, mTextBytes, textLength);
+
+		if (mCount == 0) {
+			mTail = mHead;
+		}
+		mHead += length;
+		mCount++;
+		writeHeader();
+	}
+
+	synchronized void close() {
+		if (!mClosed) {
+			mClosed = true;
+			try {
+				mFile.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private ArrayList<LogEntry> read() {
+		ArrayList<LogEntry> entries = new ArrayList<LogEntry>();
+		if (mMap.getInt(OFFSET_MAGIC) != MAGIC || mMap.getInt(OFFSET_VERSION) != VERSION
+				|| mMap.getInt(OFFSET_SIZE) != mSize) {
+			return entries;
+		}
+		// no more records than fit in the file, whatever the count says
+		int count = Math.min(mMap.getInt(OFFSET_COUNT), (mSize - DATA_START) / RECORD_HEADER_SIZE);
+		int tagCount = mMap.getInt(OFFSET_TAG_COUNT);
+		String[] tags = new String[Math.min(Math.max(tagCount, 0), TAG_SLOTS)];
+		for (int i = 0; i < tags.length; i++) {
+			int slot = HEADER_SIZE + i * TAG_SLOT_SIZE;
+			tags[i] = decode(slot + 1, Math.min(mMap.get(slot) & 0xFF, TAG_SLOT_SIZE - 1));
+		}
+
+		int pos = mMap.getInt(OFFSET_TAIL);
+		for (int i = 0; i < count; i++) {
+			if (pos < DATA_START || pos + 2 > mSize || mMap.getShort(pos) == 0) {
+				pos = DATA_START;
+			}
+			int length = mMap.getShort(pos) & 0xFFFF;
+			if (length < RECORD_HEADER_SIZE || pos + length > mSize) {
+				// corrupt, keep what was read so far
+				break;
+			}
+			int end = pos + length;
+			int level = mMap.get(pos + 2);
+			long time = mMap.getLong(pos + 3);
+			int tagId = mMap.getShort(pos + 11);
+			int p = pos + 13;
+			String tag;
+			if (tagId < 0) {
+				int tagLength = mMap.getShort(p);
+				if (!fits(p, tagLength, end)) {
+					break;
+				}
+				tag = decode(p + 2, tagLength);
+				p += 2 + tagLength;
+			} else {
+				tag = (tagId < tags.length) ? tags[tagId] : "";
+			}
+			if (p + 2 > end) {
+				break;
+			}
+			int textLength = mMap.getShort(p);
+			if (!fits(p, textLength, end)) {
+				break;
+			}
+			String text = decode(p + 2, textLength);
+			entries.add(new LogEntry(level, time, tag, text));
+			pos += length;
+		}
+		Collections.reverse(entries);
+		return entries;
+	}
+
+	/**
+	 * @return true if a length at pos and the bytes it counts end within
+	 *         the record
+	 */
+	private static boolean fits(int pos, int length, int end) {
+		return length >= 0 && pos + 2 + length <= end;
+	}
+
+	private void reset() {
+		mHead = DATA_START;
+		mTail = DATA_START;
+		mCount = 0;
+		mMap.putInt(OFFSET_MAGIC, MAGIC);
+		mMap.putInt(OFFSET_VERSION, VERSION);
+		mMap.putInt(OFFSET_SIZE, mSize);
+		mMap.putInt(OFFSET_TAG_COUNT, 0);
+		writeHeader();
+	}
+
+	private void writeHeader() {
+		mMap.putInt(OFFSET_HEAD, mHead);
+		mMap.putInt(OFFSET_TAIL, mTail);
+		mMap.putInt(OFFSET_COUNT, mCount);
+	}
+
+	private int next(int pos) {
+		pos += mMap.getShort(pos) & 0xFFFF;
+		if (pos + 2 > mSize || mMap.getShort(pos) == 0) {
+			pos = DATA_START;
+		}
+		return pos;
+	}
+
+	private int tagIdOf(int dictionaryId) {
+		if (dictionaryId >= mTagSlots.length) {
+			int[] grown = new int[Math.max(mTagSlots.length * 2, dictionaryId + 1)];
+			System.arraycopy(mTagSlots, 0, grown, 0, mTagSlots.length);
+			mTagSlots = grown;
+		}
+		if (mTagSlots[dictionaryId] != 0) {
+			return mTagSlots[dictionaryId] - 1;
+		}
+		if (mTagCount >= TAG_SLOTS) {
+			return -1;
+		}
+		int next = mTagCount++;
+		int slot = HEADER_SIZE + next * TAG_SLOT_SIZE;
+		int length = encode(TagDictionary.nameOf(dictionaryId), mTagBytes, TAG_SLOT_SIZE - 1);
+		mMap.put(slot, (byte) length);
+		put(slot + 1, mTagBytes, length);
+		mTagSlots[dictionaryId] = next + 1;
+		mMap.putInt(OFFSET_TAG_COUNT, next + 1);
+		return next;
+	}
+
+	private void put(int pos, byte[] src, int length) {
+		mMap.position(pos);
+		mMap.put(src, 0, length);
+	}
+
+	private String decode(int pos, int length) {
+		byte[] bytes = new byte[length];
+		mMap.position(pos);
+		mMap.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static int encode(String s, byte[] out) {
+		return encode(s, out, out.length);
+	}
+
+	/**
+	 * UTF-8 encode into a reusable buffer, truncating at a character boundary.
+	 */
+	private static int encode(String s, byte[] out, int max) {
+		if (s == null) {
+			return 0;
+		}
+		int n = 0;
+		for (int i = 0, len = s.length(); i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (n + 1 > max) break;
+				out[n++] = (byte) c;
+			} else if (c < 0x800) {
+				if (n + 2 > max) break;
+				out[n++] = (byte) (0xC0 | (c >> 6));
+				out[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				if (n + 4 > max) break;
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				out[n++] = (byte) (0xF0 | (cp >> 18));
+				out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				out[n++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				if (n + 3 > max) break;
+				out[n++] = (byte) (0xE0 | (c >> 12));
+				out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				out[n++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return n;
+	}
+
+}
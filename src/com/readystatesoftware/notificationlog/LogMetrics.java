@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of the log pipeline, summarized as {@link LogStats}.
+ * Recording only touches striped counters and lock-free histograms, so
+ * logging threads do not contend on the instrumentation, and only about
+ * one add in {@link #SAMPLE_INTERVAL} reads the clock.
+ */
+final class LogMetrics {
+
+	static final int SAMPLE_INTERVAL = 16;
+
+	private final StripedCounter mLogged = new StripedCounter();
+	private final StripedCounter mRepeated = new StripedCounter();
+	private final StripedCounter mFiltered = new StripedCounter();
+	private final StripedCounter mRateLimited = new StripedCounter();
+	private final StripedCounter mToasts = new StripedCounter();
+	private final StripedCounter mPublished = new StripedCounter();
+	// evictions from buffers that have since been cleared
+	private final AtomicLong mEvicted = new AtomicLong();
+	// only counted by the logcat reader
+	private final AtomicLong mLogcatUnmatched = new AtomicLong();
+	private final LatencyHistogram mAppendLatency = new LatencyHistogram();
+	private final LatencyHistogram mBuildLatency = new LatencyHistogram();
+	private final LatencyHistogram mNotifyLatency = new LatencyHistogram();
+
+	/**
+	 * Count a call that is about to be added to the buffer.
+	 *
+	 * @return true if the add should be timed and passed to
+	 *         {@link #recordAppend(long)}
+	 */
+	boolean countLogged() {
+		return (mLogged.increment() & (SAMPLE_INTERVAL - 1)) == 0;
+	}
+
+	void countRepeated() {
+		mRepeated.increment();
+	}
+
+	void countFiltered() {
+		mFiltered.increment();
+	}
+
+	void countRateLimited() {
+		mRateLimited.increment();
+	}
+
+	void countLogcatUnmatched(long count) {
+		mLogcatUnmatched.addAndGet(count);
+	}
+
+	void countToast() {
+		mToasts.increment();
+	}
+
+	void recordAppend(long nanos) {
+		mAppendLatency.record(nanos);
+	}
+
+	void recordPublish(long buildNanos, long notifyNanos) {
+		mPublished.increment();
+		mBuildLatency.record(buildNanos);
+		mNotifyLatency.record(notifyNanos);
+	}
+
+	/**
+	 * Keep the evictions of a buffer that is being replaced.
+	 */
+	void retire(LogBuffer buffer) {
+		mEvicted.addAndGet(evictedFrom(buffer));
+	}
+
+	LogStats snapshot(LogBuffer buffer) {
+		return new LogStats(mLogged.sum(), mRepeated.sum(), mFiltered.sum(), mRateLimited.sum(),
+				mEvicted.get() + evictedFrom(buffer), mToasts.sum(), mPublished.sum(), mLogcatUnmatched.get(),
+				buffer.size(), buffer.capacity(), buffer.memoryUsage(),
+				mAppendLatency.snapshot(), mBuildLatency.snapshot(), mNotifyLatency.snapshot());
+	}
+
+	void reset(LogBuffer buffer) {
+		mLogged.reset();
+		mRepeated.reset();
+		mFiltered.reset();
+		mRateLimited.reset();
+		mToasts.reset();
+		mPublished.reset();
+		mLogcatUnmatched.set(0);
+		mEvicted.set(-evictedFrom(buffer));
+		mAppendLatency.reset();
+		mBuildLatency.reset();
+		mNotifyLatency.reset();
+	}
+
+	private static long evictedFrom(LogBuffer buffer) {
+		return buffer.head() - buffer.size();
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+/**
+ * Serves the log buffer to a {@link LogActivity} running in another process
+ * of the same app, a page of entries at a time, and the files exported by
+ * {@link LogActivity} to the apps they are shared with. Declare it in your
+ * manifest with the authority <code>&lt;your package&gt;.notificationlog</code>:
+ *
+ * <pre>
+ * &lt;provider
+ *     android:name="com.readystatesoftware.notificationlog.LogProvider"
+ *     android:authorities="com.example.myapp.notificationlog"
+ *     android:exported="false"
+ *     android:grantUriPermissions="true" /&gt;
+ * </pre>
+ *
+ * <p>The provider supports these URIs:
+ * <ul>
+ * <li><code>state</code>: one row describing the buffer and the filter</li>
+ * <li><code>entries?since=&lt;seq&gt;&amp;limit=&lt;n&gt;</code>: up to n entries
+ *     from sequence number seq, oldest first; delete to clear the buffer</li>
+ * <li><code>stacktrace/&lt;seq&gt;</code>: the stack trace of one entry</li>
+ * <li><code>filter</code>: update with an <code>expression</code> value to
+ *     set the filter</li>
+ * <li><code>stats</code>: one row with the {@link LogStats} as text</li>
+ * <li><code>export/&lt;name&gt;</code>: an exported file in the app's cache
+ *     directory, readable by the app it was shared with</li>
+ * </ul>
+ */
+public class LogProvider extends ContentProvider {
+
+	static final String AUTHORITY_SUFFIX = ".notificationlog";
+
+	static final String PATH_STATE = "state";
+	static final String PATH_ENTRIES = "entries";
+	static final String PATH_STACK_TRACE = "stacktrace";
+	static final String PATH_FILTER = "filter";
+	static final String PATH_STATS = "stats";
+	static final String PATH_EXPORT = "export";
+
+	static final String PARAM_SINCE = "since";
+	static final String PARAM_LIMIT = "limit";
+	static final String VALUE_EXPRESSION = "expression";
+
+	static final String[] STATE_COLUMNS = { "generation", "head", "tail", "capacity", "filter" };
+	static final String[] ENTRY_COLUMNS = { "_id", "level", "time", "tag", "text", "count", "last_time", "has_stack_trace" };
+	static final String[] STACK_TRACE_COLUMNS = { "stack_trace" };
+	static final String[] STATS_COLUMNS = { "stats" };
+	static final String[] EXPORT_COLUMNS = { OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE };
+
+	static final int DEFAULT_LIMIT = 500;
+	static final int MAX_LIMIT = 2000;
+
+	static Uri getUri(Context context, String path) {
+		return Uri.parse("content://" + context.getPackageName() + AUTHORITY_SUFFIX + "/" + path);
+	}
+
+	/**
+	 * @return the directory exports are written to before they are shared
+	 */
+	static File getExportDir(Context context) {
+		return new File(context.getCacheDir(), PATH_EXPORT);
+	}
+
+	static Uri getExportUri(Context context, File file) {
+		return getUri(context, PATH_EXPORT + "/" + file.getName());
+	}
+
+	@Override
+	public boolean onCreate() {
+		Log.attachProvider(getContext().getContentResolver(), getUri(getContext(), ""));
+		return true;
+	}
+
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		List<String> segments = uri.getPathSegments();
+		String path = segments.isEmpty() ? "" : segments.get(0);
+		LogBuffer buffer = Log.getBuffer();
+
+		if (PATH_STATE.equals(path)) {
+			MatrixCursor cursor = new MatrixCursor(STATE_COLUMNS, 1);
+			cursor.addRow(new Object[] { System.identityHashCode(buffer), buffer.head(), buffer.tail(),
+					buffer.capacity(), Log.getLogFilter().toString() });
+			return cursor;
+		}
+
+		if (PATH_ENTRIES.equals(path)) {
+			long since = parseLong(uri.getQueryParameter(PARAM_SINCE), 0);
+			int limit = (int) Math.min(MAX_LIMIT, parseLong(uri.getQueryParameter(PARAM_LIMIT), DEFAULT_LIMIT));
+			MatrixCursor cursor = new MatrixCursor(ENTRY_COLUMNS, limit);
+			long head = buffer.head();
+			for (long seq = Math.max(since, buffer.tail()); seq < head && cursor.getCount() < limit; seq++) {
+				LogEntry e = buffer.get(seq);
+				if (e == null) {
+					if (seq >= buffer.tail()) {
+						// claimed but not yet published
+						break;
+					}
+					continue;
+				}
+				cursor.addRow(new Object[] { seq, e.getLevel(), e.getTime(), e.getTag(), e.getText(),
+						e.getCount(), e.getLastTime(), e.hasStackTrace() ? 1 : 0 });
+			}
+			return cursor;
+		}
+
+		if (PATH_STACK_TRACE.equals(path) && segments.size() > 1) {
+			MatrixCursor cursor = new MatrixCursor(STACK_TRACE_COLUMNS, 1);
+			LogEntry e = buffer.get(parseLong(segments.get(1), -1));
+			if (e != null && e.hasStackTrace()) {
+				cursor.addRow(new Object[] { e.getStackTrace() });
+			}
+			return cursor;
+		}
+
+		if (PATH_STATS.equals(path)) {
+			MatrixCursor cursor = new MatrixCursor(STATS_COLUMNS, 1);
+			cursor.addRow(new Object[] { Log.getStats().toString() });
+			return cursor;
+		}
+
+		if (PATH_EXPORT.equals(path)) {
+			// the name and size, which apps receiving a shared file may ask for
+			MatrixCursor cursor = new MatrixCursor(EXPORT_COLUMNS, 1);
+			File file = exportedFile(uri);
+			if (file != null && file.isFile()) {
+				cursor.addRow(new Object[] { file.getName(), file.length() });
+			}
+			return cursor;
+		}
+
+		throw new IllegalArgumentException("unknown uri " + uri);
+	}
+
+	@Override
+	public String getType(Uri uri) {
+		File file = exportedFile(uri);
+		if (file == null) {
+			return null;
+		}
+		return file.getName().endsWith(".bin") ? "application/octet-stream" : "text/plain";
+	}
+
+	@Override
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		File file = exportedFile(uri);
+		if (file == null || !"r".equals(mode)) {
+			throw new FileNotFoundException(uri.toString());
+		}
+		return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+	}
+
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		throw new UnsupportedOperationException("entries can only be added through Log");
+	}
+
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		if (!PATH_ENTRIES.equals(uri.getLastPathSegment())) {
+			throw new IllegalArgumentException("unknown uri " + uri);
+		}
+		Log.clearLogbuffer();
+		return 1;
+	}
+
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		if (!PATH_FILTER.equals(uri.getLastPathSegment())) {
+			throw new IllegalArgumentException("unknown uri " + uri);
+		}
+		Log.setLogFilter(LogFilter.parse(values.getAsString(VALUE_EXPRESSION)));
+		return 1;
+	}
+
+	/**
+	 * @return the exported file the uri names, or null if it does not name
+	 *         one in the export directory
+	 */
+	private File exportedFile(Uri uri) {
+		List<String> segments = uri.getPathSegments();
+		if (segments.size() != 2 || !PATH_EXPORT.equals(segments.get(0))) {
+			return null;
+		}
+		String name = segments.get(1);
+		if (name.length() == 0 || name.indexOf('/') >= 0 || name.equals(".") || name.equals("..")) {
+			return null;
+		}
+		return new File(getExportDir(getContext()), name);
+	}
+
+	private static long parseLong(String value, long defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+}
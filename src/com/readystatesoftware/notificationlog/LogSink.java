@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An output for log entries in addition to the notification, such as a
+ * file. Add one with {@link Log#addSink(LogSink)}.
+ *
+ * <p>Every log call added to the log buffer is queued for each sink as it
+ * is added, including repeats that the buffer collapses into one entry,
+ * and every sink writes its queue on a thread of its own, at most once per
+ * notification interval unless its queue is half full, so a slow sink only
+ * holds up itself. What happens when a sink's queue is full is set by its
+ * backpressure policy:
+ * <ul>
+ * <li>{@link #BACKPRESSURE_DROP}: new entries are dropped</li>
+ * <li>{@link #BACKPRESSURE_BLOCK}: nothing is dropped. The thread handing
+ *     entries to the sinks waits, which delays the other sinks, and the
+ *     entries wait for it in memory; log calls never wait</li>
+ * <li>{@link #BACKPRESSURE_SAMPLE}: once the queue is half full only one
+ *     entry in {@link #SAMPLE_RATE} is queued, and entries are dropped when
+ *     it is full</li>
+ * </ul>
+ *
+ * <p>The queue capacity, backpressure policy and flush interval must be set
+ * before the sink is added.
+ */
+public abstract class LogSink {
+
+	public static final int BACKPRESSURE_DROP = 0;
+	public static final int BACKPRESSURE_BLOCK = 1;
+	public static final int BACKPRESSURE_SAMPLE = 2;
+
+	public static final int SAMPLE_RATE = 8;
+
+	static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	private int mQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int mBackpressure = BACKPRESSURE_DROP;
+	private long mFlushInterval;
+	private final StripedCounter mDropped = new StripedCounter();
+
+	// set while the sink is added
+	SinkRunner mRunner;
+
+	/**
+	 * @param entries the number of entries that may wait to be written
+	 * @return this sink
+	 */
+	public LogSink setQueueCapacity(int entries) {
+		if (entries <= 0) {
+			throw new IllegalArgumentException("entries must be positive");
+		}
+		mQueueCapacity = entries;
+		return this;
+	}
+
+	/**
+	 * @param policy {@link #BACKPRESSURE_DROP}, {@link #BACKPRESSURE_BLOCK}
+	 *        or {@link #BACKPRESSURE_SAMPLE}
+	 * @return this sink
+	 */
+	public LogSink setBackpressure(int policy) {
+		if (policy != BACKPRESSURE_DROP && policy != BACKPRESSURE_BLOCK && policy != BACKPRESSURE_SAMPLE) {
+			throw new IllegalArgumentException("unknown policy " + policy);
+		}
+		mBackpressure = policy;
+		return this;
+	}
+
+	/**
+	 * Collect entries for at least this long before writing them, unless
+	 * the queue is more than half full. The sink is flushed after every
+	 * write.
+	 *
+	 * @param millis the interval, or 0 to write whatever has been
+	 *        dispatched straight away
+	 * @return this sink
+	 */
+	public LogSink setFlushInterval(long millis) {
+		mFlushInterval = Math.max(0, millis);
+		return this;
+	}
+
+	public int getQueueCapacity() {
+		return mQueueCapacity;
+	}
+
+	public int getBackpressure() {
+		return mBackpressure;
+	}
+
+	public long getFlushInterval() {
+		return mFlushInterval;
+	}
+
+	/**
+	 * @return the number of entries this sink did not receive because its
+	 *         queue was full or they were sampled out
+	 */
+	public long getDroppedCount() {
+		return mDropped.sum();
+	}
+
+	/**
+	 * Write a batch of entries, oldest first. Called on the sink's own
+	 * thread. Each log call is a separate entry, so consecutive identical
+	 * calls are written one by one rather than as a repeat count.
+	 */
+	protected abstract void write(List<LogEntry> entries) throws IOException;
+
+	/**
+	 * Push anything buffered by {@link #write(List)} to its destination.
+	 * Called on the sink's own thread after every write.
+	 */
+	protected void flush() throws IOException {
+	}
+
+	/**
+	 * Release any resources. Called on the sink's own thread once the sink
+	 * has been removed and its queue written.
+	 */
+	protected void close() {
+	}
+
+	/**
+	 * @return false for sinks that only need to know that the log changed.
+	 *         They are not sent entries, but are written an empty batch
+	 *         after every publish.
+	 */
+	boolean receivesEntries() {
+		return true;
+	}
+
+	void countDropped(long count) {
+		mDropped.add(count);
+	}
+
+}
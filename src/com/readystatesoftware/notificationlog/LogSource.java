@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import android.content.Context;
+
+/**
+ * Where {@link LogActivity} gets the log from. In the app's main process
+ * this is the {@link Log} class itself; in any other process, such as a
+ * <code>:log</code> process declared for the activity, the buffer is copied
+ * over from {@link LogProvider} a page at a time.
+ */
+abstract class LogSource {
+
+	static LogSource create(Context context) {
+		if (Log.isMainProcess(context)) {
+			return new LocalLogSource();
+		}
+		return new RemoteLogSource(context);
+	}
+
+	/**
+	 * Start calling the listener whenever entries may have been added or
+	 * the buffer replaced. It may be called on any thread.
+	 */
+	abstract void start(Runnable listener);
+
+	abstract void stop();
+
+	/**
+	 * Free any resources once the source is no longer used. Pending changes
+	 * such as {@link #clear()} are still carried out.
+	 */
+	abstract void release();
+
+	abstract LogBuffer getBuffer();
+
+	abstract LogFilter getFilter();
+
+	abstract void setFilter(LogFilter filter);
+
+	abstract void clear();
+
+	/**
+	 * @return the entries of the previous session, newest first
+	 */
+	abstract List<LogEntry> getPreviousSession();
+
+	/**
+	 * @return the {@link LogStats} of the logging process as text. Call it
+	 *         off the main thread.
+	 */
+	abstract String getStats();
+
+	/**
+	 * Search the buffer. May be slow, so call it off the main thread.
+	 */
+	abstract SearchIndex.Results search(LogBuffer buffer, SearchQuery query);
+
+	/**
+	 * Write the buffer to a file. Call it off the main thread.
+	 *
+	 * @return the number of entries written
+	 */
+	int export(File file, int format) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			LogExporter exporter = new LogExporter(out.getChannel(), format);
+			int count = exporter.writeBuffer(getBuffer());
+			exporter.finish();
+			return count;
+		} finally {
+			out.close();
+		}
+	}
+
+}
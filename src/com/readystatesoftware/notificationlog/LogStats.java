@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.Locale;
+
+/**
+ * A snapshot of what the notification log has been doing since the process
+ * started or {@link Log#resetStats()} was last called, from
+ * {@link Log#getStats()}. The counters are read one after another while
+ * logging may continue, so they may be slightly out of step with each other.
+ *
+ * <p>Latencies of adding entries are sampled, one call in 16 being timed;
+ * every notification update is timed.
+ */
+public final class LogStats {
+
+	private final long mLogged;
+	private final long mRepeated;
+	private final long mFiltered;
+	private final long mRateLimited;
+	private final long mEvicted;
+	private final long mToasts;
+	private final long mPublished;
+	private final long mLogcatUnmatched;
+	private final int mBufferSize;
+	private final int mBufferCapacity;
+	private final long mBufferMemory;
+	private final Latency mAppendLatency;
+	private final Latency mBuildLatency;
+	private final Latency mNotifyLatency;
+
+	LogStats(long logged, long repeated, long filtered, long rateLimited, long evicted, long toasts, long published,
+			long logcatUnmatched,
+			int bufferSize, int bufferCapacity, long bufferMemory,
+			Latency appendLatency, Latency buildLatency, Latency notifyLatency) {
+		mLogged = logged;
+		mRepeated = repeated;
+		mFiltered = filtered;
+		mRateLimited = rateLimited;
+		mEvicted = evicted;
+		mToasts = toasts;
+		mPublished = published;
+		mLogcatUnmatched = logcatUnmatched;
+		mBufferSize = bufferSize;
+		mBufferCapacity = bufferCapacity;
+		mBufferMemory = bufferMemory;
+		mAppendLatency = appendLatency;
+		mBuildLatency = buildLatency;
+		mNotifyLatency = notifyLatency;
+	}
+
+	/**
+	 * @return the number of log calls added to the buffer, including those
+	 *         counted as a repeat of the previous entry
+	 */
+	public long getLoggedCount() {
+		return mLogged;
+	}
+
+	/**
+	 * @return the number of log calls that took a new slot in the buffer
+	 */
+	public long getAppendedCount() {
+		return Math.max(0, mLogged - mRepeated);
+	}
+
+	/**
+	 * @return the number of log calls collapsed into the previous entry
+	 */
+	public long getRepeatedCount() {
+		return mRepeated;
+	}
+
+	/**
+	 * @return the number of log calls dropped by the source filter
+	 */
+	public long getFilteredCount() {
+		return mFiltered;
+	}
+
+	/**
+	 * @return the number of log calls dropped by the rate limit
+	 */
+	public long getRateLimitedCount() {
+		return mRateLimited;
+	}
+
+	/**
+	 * @return the number of entries pushed out of the buffer by newer ones
+	 */
+	public long getEvictedCount() {
+		return mEvicted;
+	}
+
+	public long getToastCount() {
+		return mToasts;
+	}
+
+	/**
+	 * @return the number of times the notification was updated
+	 */
+	public long getPublishCount() {
+		return mPublished;
+	}
+
+	/**
+	 * @return the number of log calls whose lines the logcat reader fell
+	 *         too far behind to recognize, which may have been added to the
+	 *         buffer a second time from logcat
+	 */
+	public long getLogcatUnmatchedCount() {
+		return mLogcatUnmatched;
+	}
+
+	public int getBufferSize() {
+		return mBufferSize;
+	}
+
+	public int getBufferCapacity() {
+		return mBufferCapacity;
+	}
+
+	/**
+	 * @return the estimated memory used by the buffer in bytes
+	 */
+	public long getBufferMemoryUsage() {
+		return mBufferMemory;
+	}
+
+	/**
+	 * @return the time taken to add an entry to the buffer, which happens
+	 *         on the thread draining the logging threads' staging buffers
+	 *         rather than in the log call itself
+	 */
+	public Latency getAppendLatency() {
+		return mAppendLatency;
+	}
+
+	/**
+	 * @return the time taken to build the notification
+	 */
+	public Latency getBuildLatency() {
+		return mBuildLatency;
+	}
+
+	/**
+	 * @return the time taken to hand the notification to the system
+	 */
+	public Latency getNotifyLatency() {
+		return mNotifyLatency;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Logged: ").append(mLogged).append('\n');
+		sb.append("Repeats: ").append(mRepeated).append('\n');
+		sb.append("Filtered: ").append(mFiltered).append('\n');
+		sb.append("Rate limited: ").append(mRateLimited).append('\n');
+		sb.append("Evicted: ").append(mEvicted).append('\n');
+		sb.append("Toasts: ").append(mToasts).append('\n');
+		sb.append("Notification updates: ").append(mPublished).append('\n');
+		if (mLogcatUnmatched > 0) {
+			sb.append("Logcat unmatched: ").append(mLogcatUnmatched).append('\n');
+		}
+		sb.append("Buffer: ").append(mBufferSize).append(" / ").append(mBufferCapacity)
+				.append(" entries, ").append(mBufferMemory / 1024).append(" KB\n");
+		sb.append("Append: ").append(mAppendLatency).append('\n');
+		sb.append("Build: ").append(mBuildLatency).append('\n');
+		sb.append("Notify: ").append(mNotifyLatency);
+		return sb.toString();
+	}
+
+	/**
+	 * A distribution of durations. Percentiles are accurate to within 25%.
+	 */
+	public static final class Latency {
+
+		private final long[] mCounts;
+		private final long mCount;
+		private final long mTotal;
+		private final long mMax;
+
+		Latency(long[] counts, long total, long max) {
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			mCounts = counts;
+			mCount = count;
+			mTotal = total;
+			mMax = max;
+		}
+
+		/**
+		 * @return the number of recorded durations
+		 */
+		public long getCount() {
+			return mCount;
+		}
+
+		public long getMeanNanos() {
+			return (mCount == 0) ? 0 : mTotal / mCount;
+		}
+
+		public long getMaxNanos() {
+			return mMax;
+		}
+
+		/**
+		 * @param percentile between 0 and 100, e.g. 99 for the duration 99%
+		 *        of the recorded ones did not exceed
+		 * @return the duration, or 0 if none were recorded
+		 */
+		public long getPercentileNanos(double percentile) {
+			if (mCount == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(mCount * Math.min(100, Math.max(0, percentile)) / 100);
+			long seen = 0;
+			for (int i = 0; i < mCounts.length; i++) {
+				seen += mCounts[i];
+				if (seen >= Math.max(1, rank)) {
+					return Math.min(LatencyHistogram.upperBoundOf(i), mMax);
+				}
+			}
+			return mMax;
+		}
+
+		@Override
+		public String toString() {
+			if (mCount == 0) {
+				return "-";
+			}
+			return String.format(Locale.US, "n=%d mean=%s p50=%s p99=%s max=%s", mCount,
+					format(getMeanNanos()), format(getPercentileNanos(50)),
+					format(getPercentileNanos(99)), format(mMax));
+		}
+
+		private static String format(long nanos) {
+			if (nanos < 10000) {
+				return nanos + "ns";
+			}
+			if (nanos < 10000000) {
+				return (nanos / 1000) + "us";
+			}
+			return (nanos / 1000000) + "ms";
+		}
+
+	}
+
+}
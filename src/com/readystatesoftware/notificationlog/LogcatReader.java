@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.Build;
+
+/**
+ * Streams the process's own output from the system log into the log
+ * buffer on a background thread. Lines of <code>logcat -v threadtime</code>
+ * are parsed in place from a reusable byte buffer, and consecutive lines
+ * with the same header, such as those of a stack trace, are joined into
+ * one entry.
+ *
+ * <p>Messages logged through {@link Log} also reach the system log, so
+ * each one is fingerprinted when it is logged and its line is skipped when
+ * it is read back. Lines from other sources are limited per tag; when the
+ * reader falls behind it stops reading, which leaves logcat to drop lines
+ * rather than the app to queue them.
+ */
+final class LogcatReader implements Runnable {
+
+	/**
+	 * Receives the ingested entries on the reader thread.
+	 */
+	interface Target {
+
+		/**
+		 * @return false if entries of the level and tag should be dropped
+		 */
+		boolean accept(int level, String tag);
+
+		void append(int level, long time, int tagId, String text);
+
+	}
+
+	static final int RATE_PER_SECOND = 20;
+	static final int RATE_BURST = 100;
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_HEADER = 256;
+	private static final int MIN_FINGERPRINTS = 256;
+	private static final int MAX_FINGERPRINTS = 1 << 16;
+	// how far past the oldest outstanding fingerprint a line is matched
+	private static final int MATCH_WINDOW = 64;
+	// the length of "MM-DD HH:MM:SS.mmm"
+	private static final int TIMESTAMP_LENGTH = 18;
+
+	private final Target mTarget;
+	private final LogMetrics mMetrics;
+	private final RateLimiter mLimiter = new RateLimiter(RATE_PER_SECOND, RATE_BURST);
+	private final int mPid = android.os.Process.myPid();
+
+	// fingerprints of messages logged through Log and not yet read back,
+	// by the order they were logged in
+	private final AtomicLongArray mFingerprints;
+	private final int mFingerprintMask;
+	private final AtomicLong mNextFingerprint = new AtomicLong();
+	// only used on the reader thread, the oldest fingerprint still looked for
+	private long mOldestFingerprint;
+
+	private volatile boolean mStopped;
+	private volatile Process mProcess;
+
+	// only used on the reader thread
+	private final byte[] mBuffer = new byte[BUFFER_SIZE];
+	private final Calendar mCalendar = Calendar.getInstance();
+	private long mStartTime;
+	private int mDay = -1;
+	private long mDayStart;
+	private byte[] mTagBytes = new byte[0];
+	private String mTag;
+
+	// the fields of the last parsed line
+	private int mLevel;
+	private long mTime;
+	private int mTagStart;
+	private int mTagEnd;
+	private int mTextStart;
+
+	// the entry being joined from lines with the same header
+	private final byte[] mHeader = new byte[MAX_HEADER];
+	private int mHeaderLength = -1;
+	private int mPendingLevel;
+	private long mPendingTime;
+	private String mPendingTag;
+	private String mPendingFirstLine;
+	private final StringBuilder mPendingText = new StringBuilder();
+
+	/**
+	 * @param backlog the number of lines the reader may fall behind the
+	 *        logging threads and still recognize theirs, such as the
+	 *        capacity of the log buffer
+	 */
+	LogcatReader(Target target, LogMetrics metrics, int backlog) {
+		mTarget = target;
+		mMetrics = metrics;
+		int size = MIN_FINGERPRINTS;
+		while (size < backlog && size < MAX_FINGERPRINTS) {
+			size <<= 1;
+		}
+		mFingerprints = new AtomicLongArray(size);
+		mFingerprintMask = size - 1;
+	}
+
+	void start() {
+		Thread thread = new Thread(this, "NotificationLogcat");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void stop() {
+		mStopped = true;
+		Process process = mProcess;
+		if (process != null) {
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Note a message logged through {@link Log}, so its line is not added
+	 * again when it is read back. Called on the logging thread.
+	 */
+	void expect(int level, String tag, String msg) {
+		if (level == Log.WTF) {
+			// the system logs it as an assertion
+			level = Log.ASSERT;
+		}
+		long seq = mNextFingerprint.getAndIncrement();
+		mFingerprints.set((int) seq & mFingerprintMask, fingerprint(level, tag, msg));
+	}
+
+	public void run() {
+		android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+		mStartTime = System.currentTimeMillis();
+		Process process;
+		try {
+			process = new ProcessBuilder(command()).redirectErrorStream(true).start();
+		} catch (IOException e) {
+			android.util.Log.w("NotificationLog", "unable to read logcat", e);
+			return;
+		}
+		mProcess = process;
+		if (mStopped) {
+			process.destroy();
+			return;
+		}
+		InputStream in = process.getInputStream();
+		try {
+			int length = 0;
+			boolean overlong = false;
+			while (!mStopped) {
+				if (in.available() == 0) {
+					// nothing more to join with before the next read blocks
+					flushPending();
+				}
+				int n = in.read(mBuffer, length, mBuffer.length - length);
+				if (n < 0) {
+					break;
+				}
+				int end = length + n;
+				int start = 0;
+				for (int i = length; i < end; i++) {
+					if (mBuffer[i] == '\n') {
+						if (!overlong) {
+							line(start, i);
+						}
+						overlong = false;
+						start = i + 1;
+					}
+				}
+				length = end - start;
+				if (length == mBuffer.length) {
+					// keep what fits of a line longer than the buffer
+					line(0, length);
+					overlong = true;
+					length = 0;
+				} else if (start > 0) {
+					System.arraycopy(mBuffer, start, mBuffer, 0, length);
+				}
+			}
+		} catch (IOException e) {
+			// destroyed by stop()
+		} finally {
+			flushPending();
+			process.destroy();
+		}
+	}
+
+	private String[] command() {
+		if (Build.VERSION.SDK_INT >= 24) {
+			return new String[] { "logcat", "-v", "threadtime", "--pid=" + mPid };
+		}
+		// older versions have no pid filter, lines are checked below
+		return new String[] { "logcat", "-v", "threadtime" };
+	}
+
+	private void line(int start, int end) {
+		if (end > start && mBuffer[end - 1] == '\r') {
+			end--;
+		}
+		if (!parse(start, end)) {
+			return;
+		}
+		int headerLength = mTextStart - start;
+		if (headerLength == mHeaderLength && sameHeader(start)) {
+			if (mPendingTag != null) {
+				mPendingText.append('\n').append(decode(mTextStart, end));
+			}
+			// otherwise it is a late line of a message of ours, whose first
+			// lines were already read and skipped
+			return;
+		}
+		flushPending();
+		if (headerLength <= MAX_HEADER) {
+			System.arraycopy(mBuffer, start, mHeader, 0, headerLength);
+			mHeaderLength = headerLength;
+		} else {
+			mHeaderLength = -2;
+		}
+		mPendingLevel = mLevel;
+		mPendingTime = mTime;
+		mPendingTag = tag();
+		mPendingFirstLine = decode(mTextStart, end);
+		mPendingText.append(mPendingFirstLine);
+	}
+
+	/**
+	 * Parse a line of the form
+	 * <pre>MM-DD HH:MM:SS.mmm  PID  TID L TAG     : text</pre>
+	 *
+	 * @return false if it is not such a line, or is not one of this
+	 *         process's from after the reader started
+	 */
+	private boolean parse(int start, int end) {
+		byte[] b = mBuffer;
+		if (end - start < TIMESTAMP_LENGTH + 1 || b[start + 2] != '-' || b[start + 5] != ' '
+				|| b[start + 8] != ':' || b[start + 11] != ':' || b[start + 14] != '.') {
+			return false;
+		}
+		int month = digits(start, 2);
+		int day = digits(start + 3, 2);
+		int hour = digits(start + 6, 2);
+		int minute = digits(start + 9, 2);
+		int second = digits(start + 12, 2);
+		int milli = digits(start + 15, 3);
+		if ((month | day | hour | minute | second | milli) < 0) {
+			return false;
+		}
+
+		int p = skipSpaces(start + TIMESTAMP_LENGTH, end);
+		int pid = 0;
+		int q = p;
+		while (q < end && b[q] >= '0' && b[q] <= '9') {
+			pid = pid * 10 + (b[q++] - '0');
+		}
+		if (q == p || pid != mPid) {
+			return false;
+		}
+		p = skipSpaces(q, end);
+		while (p < end && b[p] >= '0' && b[p] <= '9') {
+			p++;
+		}
+		p = skipSpaces(p, end);
+		if (p + 2 > end || b[p + 1] != ' ') {
+			return false;
+		}
+		mLevel = levelOf(b[p]);
+		if (mLevel < 0) {
+			return false;
+		}
+
+		// the tag is padded with spaces up to ": "
+		mTagStart = p + 2;
+		int colon = mTagStart;
+		while (colon < end && !(b[colon] == ':' && (colon + 1 == end || b[colon + 1] == ' '))) {
+			colon++;
+		}
+		if (colon == end) {
+			return false;
+		}
+		mTagEnd = colon;
+		while (mTagEnd > mTagStart && b[mTagEnd - 1] == ' ') {
+			mTagEnd--;
+		}
+		mTextStart = Math.min(end, colon + 2);
+
+		mTime = dayStart(month, day) + ((hour * 60L + minute) * 60 + second) * 1000 + milli;
+		return mTime >= mStartTime;
+	}
+
+	private void flushPending() {
+		if (mPendingTag == null) {
+			return;
+		}
+		int level = mPendingLevel;
+		String tag = mPendingTag;
+		String text = mPendingText.toString();
+		boolean ours = isExpected(fingerprint(level, tag, mPendingFirstLine));
+		mPendingTag = null;
+		mPendingFirstLine = null;
+		mPendingText.setLength(0);
+		if (ours) {
+			// keep the header to skip any more lines of the message
+			return;
+		}
+		mHeaderLength = -1;
+
+		if (!mTarget.accept(level, tag)) {
+			return;
+		}
+		int tagId = TagDictionary.intern(tag);
+		int dropped = mLimiter.acquire(tagId);
+		if (dropped < 0) {
+			mMetrics.countRateLimited();
+			return;
+		}
+		if (dropped > 0) {
+			mTarget.append(level, mPendingTime, tagId, "(rate limit dropped " + dropped + " logcat entries)");
+		}
+		mTarget.append(level, mPendingTime, tagId, text);
+	}
+
+	/**
+	 * Look for the fingerprint among those logged around the oldest one not
+	 * yet read back, and consume it if found. Lines are read back in about
+	 * the order they were logged, so only a small window is searched.
+	 */
+	private boolean isExpected(long fingerprint) {
+		long next = mNextFingerprint.get();
+		long overwritten = next - mFingerprints.length();
+		if (mOldestFingerprint < overwritten) {
+			// the reader fell so far behind that these were overwritten, and
+			// their lines may be added a second time
+			mMetrics.countLogcatUnmatched(overwritten - mOldestFingerprint);
+			mOldestFingerprint = overwritten;
+		}
+		long end = Math.min(next, mOldestFingerprint + MATCH_WINDOW);
+		for (long seq = mOldestFingerprint; seq < end; seq++) {
+			int i = (int) seq & mFingerprintMask;
+			if (mFingerprints.get(i) == fingerprint && mFingerprints.compareAndSet(i, fingerprint, 0)) {
+				// give up on those well before it, whose lines never came,
+				// then move past those that have been read back
+				mOldestFingerprint = Math.max(mOldestFingerprint, seq - MATCH_WINDOW / 2);
+				while (mOldestFingerprint < next && mFingerprints.get((int) mOldestFingerprint & mFingerprintMask) == 0) {
+					mOldestFingerprint++;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A hash of the level, the tag and the first line of the message, which
+	 * is all a line read back from logcat is certain to share with it.
+	 */
+	private static long fingerprint(int level, String tag, String msg) {
+		if (tag == null) {
+			tag = "null";
+		}
+		long h = 0xcbf29ce484222325L ^ level;
+		h *= 0x100000001b3L;
+		for (int i = 0, n = tag.length(); i < n; i++) {
+			h = (h ^ tag.charAt(i)) * 0x100000001b3L;
+		}
+		h = (h ^ '\n') * 0x100000001b3L;
+		if (msg != null) {
+			for (int i = 0, n = msg.length(); i < n; i++) {
+				char c = msg.charAt(i);
+				if (c == '\n') {
+					break;
+				}
+				h = (h ^ c) * 0x100000001b3L;
+			}
+		}
+		// zero marks a free slot
+		return (h == 0) ? 1 : h;
+	}
+
+	private boolean sameHeader(int start) {
+		for (int i = 0; i < mHeaderLength; i++) {
+			if (mBuffer[start + i] != mHeader[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the tag of the last parsed line, reusing the previous String
+	 *         when the tag has not changed
+	 */
+	private String tag() {
+		int length = mTagEnd - mTagStart;
+		boolean same = (length == mTagBytes.length);
+		for (int i = 0; same && i < length; i++) {
+			same = (mBuffer[mTagStart + i] == mTagBytes[i]);
+		}
+		if (!same) {
+			mTagBytes = new byte[length];
+			System.arraycopy(mBuffer, mTagStart, mTagBytes, 0, length);
+			mTag = decode(mTagStart, mTagEnd);
+		}
+		return mTag;
+	}
+
+	private String decode(int start, int end) {
+		try {
+			return new String(mBuffer, start, end - start, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return the value of the decimal digits, or -1 if there are others
+	 */
+	private int digits(int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int d = mBuffer[i] - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	private int skipSpaces(int p, int end) {
+		while (p < end && mBuffer[p] == ' ') {
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * @return the local time at the start of the day, which logcat gives
+	 *         without a year
+	 */
+	private long dayStart(int month, int day) {
+		int key = month * 32 + day;
+		if (key != mDay) {
+			mCalendar.setTimeInMillis(System.currentTimeMillis());
+			int year = mCalendar.get(Calendar.YEAR);
+			if (month - 1 > mCalendar.get(Calendar.MONTH)) {
+				// logged before the new year
+				year--;
+			}
+			mCalendar.clear();
+			mCalendar.set(year, month - 1, day);
+			mDayStart = mCalendar.getTimeInMillis();
+			mDay = key;
+		}
+		return mDayStart;
+	}
+
+	private static int levelOf(byte c) {
+		switch (c) {
+		case 'V': return Log.VERBOSE;
+		case 'D': return Log.DEBUG;
+		case 'I': return Log.INFO;
+		case 'W': return Log.WARN;
+		case 'E': return Log.ERROR;
+		case 'F':
+		case 'A': return Log.ASSERT;
+		default: return -1;
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent entries it receives in memory, e.g. to attach to
+ * a crash report or to check in a test what was logged.
+ */
+public final class MemorySink extends LogSink {
+
+	private final LogEntry[] mEntries;
+	private int mNext;
+	private int mSize;
+
+	/**
+	 * @param maxEntries the number of entries to keep
+	 */
+	public MemorySink(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		mEntries = new LogEntry[maxEntries];
+	}
+
+	@Override
+	protected synchronized void write(List<LogEntry> entries) {
+		for (int i = 0; i < entries.size(); i++) {
+			mEntries[mNext] = entries.get(i);
+			mNext = (mNext + 1) % mEntries.length;
+			mSize = Math.min(mSize + 1, mEntries.length);
+		}
+	}
+
+	/**
+	 * @return the kept entries, newest first
+	 */
+	public synchronized ArrayList<LogEntry> getEntries() {
+		ArrayList<LogEntry> entries = new ArrayList<LogEntry>(mSize);
+		for (int i = 1; i <= mSize; i++) {
+			entries.add(mEntries[(mNext - i + mEntries.length) % mEntries.length]);
+		}
+		return entries;
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < mEntries.length; i++) {
+			mEntries[i] = null;
+		}
+		mNext = 0;
+		mSize = 0;
+	}
+
+}
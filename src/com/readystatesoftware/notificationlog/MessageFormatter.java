@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+/**
+ * Substitutes arguments into <code>{}</code> placeholders. Each thread
+ * formats into its own reusable StringBuilder, so the only allocation is
+ * the resulting String. An argument whose toString() formats a message of
+ * its own gets a fresh builder for it. Placeholders without a matching argument are left
+ * in place and surplus arguments are ignored.
+ */
+final class MessageFormatter {
+
+	private static final String PLACEHOLDER = "{}";
+	private static final int MAX_RETAINED_CAPACITY = 4096;
+
+	private static final ThreadLocal<Reusable> sReusable = new ThreadLocal<Reusable>() {
+		@Override
+		protected Reusable initialValue() {
+			return new Reusable();
+		}
+	};
+
+	private MessageFormatter() {
+	}
+
+	static String format(String format, Object arg1, Object arg2, Object arg3, int count) {
+		StringBuilder sb = obtain();
+		try {
+			int start = 0;
+			for (int i = 0; i < count; i++) {
+				int pos = format.indexOf(PLACEHOLDER, start);
+				if (pos < 0) {
+					break;
+				}
+				sb.append(format, start, pos);
+				sb.append(i == 0 ? arg1 : (i == 1 ? arg2 : arg3));
+				start = pos + PLACEHOLDER.length();
+			}
+			return finish(sb, format, start);
+		} finally {
+			release(sb);
+		}
+	}
+
+	static String format(String format, long arg) {
+		StringBuilder sb = obtain();
+		int start = 0;
+		int pos = format.indexOf(PLACEHOLDER);
+		if (pos >= 0) {
+			sb.append(format, 0, pos);
+			sb.append(arg);
+			start = pos + PLACEHOLDER.length();
+		}
+		String result = finish(sb, format, start);
+		release(sb);
+		return result;
+	}
+
+	static String format(String format, double arg) {
+		StringBuilder sb = obtain();
+		int start = 0;
+		int pos = format.indexOf(PLACEHOLDER);
+		if (pos >= 0) {
+			sb.append(format, 0, pos);
+			sb.append(arg);
+			start = pos + PLACEHOLDER.length();
+		}
+		String result = finish(sb, format, start);
+		release(sb);
+		return result;
+	}
+
+	private static StringBuilder obtain() {
+		Reusable reusable = sReusable.get();
+		if (reusable.mInUse) {
+			// called from an argument's toString() while formatting
+			return new StringBuilder(256);
+		}
+		reusable.mInUse = true;
+		StringBuilder sb = reusable.mBuilder;
+		sb.setLength(0);
+		return sb;
+	}
+
+	private static String finish(StringBuilder sb, String format, int start) {
+		sb.append(format, start, format.length());
+		return sb.toString();
+	}
+
+	private static void release(StringBuilder sb) {
+		Reusable reusable = sReusable.get();
+		if (sb == reusable.mBuilder) {
+			if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+				// don't hold on to the buffer of an unusually long message
+				reusable.mBuilder = new StringBuilder(256);
+			}
+			reusable.mInUse = false;
+		}
+	}
+
+	private static final class Reusable {
+
+		StringBuilder mBuilder = new StringBuilder(256);
+		boolean mInUse;
+
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+/**
+ * The filtered view of the log buffer shown in the notification. Only the
+ * entries appended or evicted since the previous update are examined, so
+ * the line count and the newest lines are available without scanning the
+ * buffer. The whole buffer is only walked again when the buffer or the
+ * filter changes.
+ *
+ * <p>This class is not thread safe; it is only used from the notification
+ * sink's thread, by {@code Log.updateNotification()}.
+ */
+final class NotificationInbox {
+
+	static final int MAX_LINES = 10;
+
+	private LogBuffer mBuffer;
+	private FilterPredicate mPredicate;
+	private long mNext;
+
+	// sequence numbers of the matching entries, oldest at mFirst
+	private long[] mMatches;
+	private int mFirst;
+	private int mSize;
+
+	/**
+	 * Bring the view up to date with the buffer.
+	 *
+	 * @param buffer the current log buffer
+	 * @param predicate the notification filter
+	 */
+	void update(LogBuffer buffer, FilterPredicate predicate) {
+		if (buffer != mBuffer || predicate != mPredicate) {
+			reset(buffer, predicate);
+		}
+
+		long tail = buffer.tail();
+		while (mSize > 0 && mMatches[mFirst] < tail) {
+			mFirst = (mFirst + 1) % mMatches.length;
+			mSize--;
+		}
+
+		long head = buffer.head();
+		long seq = Math.max(mNext, tail);
+		while (seq < head) {
+			int entryLevel = buffer.levelOf(seq);
+			int entryTagId = buffer.tagIdOf(seq);
+			if (entryLevel < 0 || entryTagId < 0) {
+				// claimed but not yet published, pick it up on the next update
+				break;
+			}
+			if (predicate.accept(entryLevel, entryTagId, buffer, seq)) {
+				append(seq);
+			}
+			seq++;
+		}
+		mNext = seq;
+	}
+
+	/**
+	 * @return the number of buffered entries that match the filter
+	 */
+	int getCount() {
+		return mSize;
+	}
+
+	/**
+	 * @return the number of lines to display, at most {@link #MAX_LINES}
+	 */
+	int getLineCount() {
+		return Math.min(mSize, MAX_LINES);
+	}
+
+	/**
+	 * @param index the line index, 0 being the newest
+	 * @return the sequence number of the entry shown on that line
+	 */
+	long getLine(int index) {
+		return mMatches[(mFirst + mSize - 1 - index) % mMatches.length];
+	}
+
+	private void reset(LogBuffer buffer, FilterPredicate predicate) {
+		mBuffer = buffer;
+		mPredicate = predicate;
+		mNext = 0;
+		mMatches = new long[buffer.capacity()];
+		mFirst = 0;
+		mSize = 0;
+	}
+
+	private void append(long seq) {
+		if (mSize == mMatches.length) {
+			mFirst = (mFirst + 1) % mMatches.length;
+			mSize--;
+		}
+		mMatches[(mFirst + mSize) % mMatches.length] = seq;
+		mSize++;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Runs a publish task on a single background thread. Any number of
+ * requests made within one interval are coalesced into a single run, so
+ * callers only pay for a flag check and, at most once per interval, a
+ * message post.
+ */
+final class NotificationPublisher implements Handler.Callback {
+
+	private static final int MSG_PUBLISH = 1;
+
+	private final Runnable mTask;
+	private final Handler mHandler;
+	private final AtomicBoolean mPending = new AtomicBoolean();
+	private volatile long mInterval;
+	private volatile long mLastPublish;
+
+	NotificationPublisher(Runnable task, long interval) {
+		mTask = task;
+		mInterval = interval;
+		HandlerThread thread = new HandlerThread("NotificationLog", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		mHandler = new Handler(thread.getLooper(), this);
+	}
+
+	void setInterval(long interval) {
+		mInterval = interval;
+	}
+
+	/**
+	 * Request that the task is run. The first request after a quiet period
+	 * runs immediately, later ones are deferred until the interval since
+	 * the last run has elapsed.
+	 */
+	void requestPublish() {
+		if (mPending.compareAndSet(false, true)) {
+			long delay = mLastPublish + mInterval - SystemClock.uptimeMillis();
+			mHandler.sendEmptyMessageDelayed(MSG_PUBLISH, Math.max(0, delay));
+		}
+	}
+
+	public boolean handleMessage(Message msg) {
+		if (msg.what == MSG_PUBLISH) {
+			// clear the flag first so requests made during the run schedule another one
+			mPending.set(false);
+			mLastPublish = SystemClock.uptimeMillis();
+			mTask.run();
+			return true;
+		}
+		return false;
+	}
+
+}
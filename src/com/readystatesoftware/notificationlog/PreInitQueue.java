@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the log calls made while {@link Log#initializeAsync(android.content.Context)}
+ * is still setting up, until they can be added to the buffer. Any number
+ * of threads may add and drain entries without taking a lock. Once the
+ * queue is full the oldest entries are dropped, as the buffer would.
+ */
+final class PreInitQueue {
+
+	private final ConcurrentLinkedQueue<LogEntry> mEntries = new ConcurrentLinkedQueue<LogEntry>();
+	private final AtomicInteger mSize = new AtomicInteger();
+	private final int mCapacity;
+
+	PreInitQueue(int capacity) {
+		mCapacity = capacity;
+	}
+
+	void offer(int level, long time, int tagId, String text, Throwable tr) {
+		LogEntry e = new LogEntry(level, time, tagId, text);
+		e.setThrowable(tr);
+		mEntries.offer(e);
+		if (mSize.incrementAndGet() > mCapacity) {
+			poll();
+		}
+	}
+
+	/**
+	 * @return the oldest entry, or null if the queue is empty
+	 */
+	LogEntry poll() {
+		LogEntry e = mEntries.poll();
+		if (e != null) {
+			mSize.decrementAndGet();
+		}
+		return e;
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.os.SystemClock;
+
+/**
+ * Per-tag token buckets that limit how fast entries are added to the buffer.
+ * Each tag may add a burst of entries at once and then a steady number per
+ * second. Buckets are indexed by tag dictionary id and only lock themselves,
+ * so tags never contend with each other. They are created on first use and
+ * installed in an atomic array, so a logging thread never sees one that is
+ * not fully constructed.
+ */
+final class RateLimiter {
+
+	private final double mTokensPerMilli;
+	private final int mBurst;
+	private volatile AtomicReferenceArray<Bucket> mBuckets = new AtomicReferenceArray<Bucket>(0);
+
+	/**
+	 * @param perSecond the steady number of entries per tag per second
+	 * @param burst the number of entries a tag may add at once
+	 */
+	RateLimiter(int perSecond, int burst) {
+		if (perSecond <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("rate and burst must be positive");
+		}
+		mTokensPerMilli = perSecond / 1000.0;
+		mBurst = burst;
+	}
+
+	/**
+	 * Take a token for an entry of the tag.
+	 *
+	 * @return -1 if the entry should be dropped, otherwise the number of
+	 *         entries of the tag that were dropped since the last one that
+	 *         was let through
+	 */
+	int acquire(int tagId) {
+		AtomicReferenceArray<Bucket> buckets = mBuckets;
+		Bucket bucket = (tagId < buckets.length()) ? buckets.get(tagId) : null;
+		if (bucket == null) {
+			bucket = bucketOf(tagId);
+		}
+		return bucket.acquire(SystemClock.uptimeMillis(), mTokensPerMilli, mBurst);
+	}
+
+	/**
+	 * Get or create the bucket of a tag. Buckets are only installed while
+	 * holding the lock, so none is lost when the array is grown.
+	 */
+	private synchronized Bucket bucketOf(int tagId) {
+		AtomicReferenceArray<Bucket> buckets = mBuckets;
+		if (tagId >= buckets.length()) {
+			AtomicReferenceArray<Bucket> grown = new AtomicReferenceArray<Bucket>(Math.max(tagId + 1, buckets.length() * 2));
+			for (int i = 0; i < buckets.length(); i++) {
+				grown.set(i, buckets.get(i));
+			}
+			buckets = grown;
+			mBuckets = grown;
+		}
+		Bucket bucket = buckets.get(tagId);
+		if (bucket == null) {
+			bucket = new Bucket(mBurst);
+			buckets.set(tagId, bucket);
+		}
+		return bucket;
+	}
+
+	private static final class Bucket {
+
+		private double mTokens;
+		private long mLast = -1;
+		private int mDropped;
+
+		Bucket(int burst) {
+			mTokens = burst;
+		}
+
+		synchronized int acquire(long now, double tokensPerMilli, int burst) {
+			if (mLast >= 0) {
+				mTokens = Math.min(burst, mTokens + (now - mLast) * tokensPerMilli);
+			}
+			mLast = now;
+			if (mTokens < 1) {
+				mDropped++;
+				return -1;
+			}
+			mTokens -= 1;
+			int dropped = mDropped;
+			mDropped = 0;
+			return dropped;
+		}
+
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * Keeps a copy of the log buffer of the app's main process, fetched from
+ * {@link LogProvider}. Only the entries added since the previous fetch are
+ * transferred, a page at a time, and the copy is a {@link LogBuffer} of its
+ * own so that the viewer works on it exactly as it would locally. Stack
+ * traces are only fetched when an entry is expanded.
+ *
+ * <p>Fetching runs on a background thread, triggered by the provider's
+ * change notifications, which are sent at most once per notification
+ * update.
+ */
+final class RemoteLogSource extends LogSource {
+
+	private static final int PAGE_SIZE = LogProvider.DEFAULT_LIMIT;
+
+	private final ContentResolver mResolver;
+	private final Context mContext;
+	private final HandlerThread mThread;
+	private final Handler mHandler;
+	private final ContentObserver mObserver;
+
+	private volatile LogBuffer mMirror = new LogBuffer(BufferPolicy.getDefault());
+	private volatile LogFilter mFilter = LogFilter.all();
+	private volatile Runnable mListener;
+	private final SearchIndex mIndex = new SearchIndex();
+
+	// only used on the sync thread
+	private int mGeneration = -1;
+	private long mRemoteNext;
+
+	private final Runnable mSyncTask = new Runnable() {
+		public void run() {
+			sync();
+		}
+	};
+
+	RemoteLogSource(Context context) {
+		mContext = context.getApplicationContext();
+		mResolver = mContext.getContentResolver();
+		mThread = new HandlerThread("NotificationLogSync", Process.THREAD_PRIORITY_BACKGROUND);
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper());
+		mObserver = new ContentObserver(mHandler) {
+			@Override
+			public void onChange(boolean selfChange) {
+				sync();
+			}
+		};
+	}
+
+	@Override
+	void start(Runnable listener) {
+		mListener = listener;
+		mResolver.registerContentObserver(LogProvider.getUri(mContext, ""), true, mObserver);
+		mHandler.post(mSyncTask);
+	}
+
+	@Override
+	void stop() {
+		mResolver.unregisterContentObserver(mObserver);
+		mListener = null;
+	}
+
+	@Override
+	void release() {
+		stop();
+		mHandler.post(new Runnable() {
+			public void run() {
+				mThread.quit();
+			}
+		});
+	}
+
+	@Override
+	LogBuffer getBuffer() {
+		return mMirror;
+	}
+
+	@Override
+	LogFilter getFilter() {
+		return mFilter;
+	}
+
+	@Override
+	void setFilter(final LogFilter filter) {
+		mFilter = filter;
+		mHandler.post(new Runnable() {
+			public void run() {
+				ContentValues values = new ContentValues();
+				values.put(LogProvider.VALUE_EXPRESSION, filter.toString());
+				mResolver.update(LogProvider.getUri(mContext, LogProvider.PATH_FILTER), values, null, null);
+			}
+		});
+	}
+
+	@Override
+	void clear() {
+		mHandler.post(new Runnable() {
+			public void run() {
+				mResolver.delete(LogProvider.getUri(mContext, LogProvider.PATH_ENTRIES), null, null);
+			}
+		});
+	}
+
+	@Override
+	List<LogEntry> getPreviousSession() {
+		// the journal is only read by the main process
+		return new ArrayList<LogEntry>();
+	}
+
+	@Override
+	String getStats() {
+		Cursor cursor = mResolver.query(LogProvider.getUri(mContext, LogProvider.PATH_STATS), null, null, null, null);
+		if (cursor == null) {
+			return "";
+		}
+		try {
+			return cursor.moveToFirst() ? cursor.getString(0) : "";
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	SearchIndex.Results search(LogBuffer buffer, SearchQuery query) {
+		return mIndex.search(buffer, query);
+	}
+
+	/**
+	 * Bring the copy up to date with the provider.
+	 */
+	private void sync() {
+		Cursor state = mResolver.query(LogProvider.getUri(mContext, LogProvider.PATH_STATE), null, null, null, null);
+		if (state == null) {
+			return;
+		}
+		try {
+			if (!state.moveToFirst()) {
+				return;
+			}
+			int generation = state.getInt(0);
+			long tail = state.getLong(2);
+			if (generation != mGeneration) {
+				// the buffer was cleared, or this is the first sync
+				mGeneration = generation;
+				mMirror = new LogBuffer(BufferPolicy.ofEntries(Math.max(1, state.getInt(3))));
+				mRemoteNext = tail;
+			}
+			try {
+				mFilter = LogFilter.parse(state.getString(4));
+			} catch (IllegalArgumentException e) {
+				mFilter = LogFilter.all();
+			}
+		} finally {
+			state.close();
+		}
+
+		LogBuffer mirror = mMirror;
+		int fetched;
+		do {
+			// ask for the newest entry already copied again, to pick up repeats
+			long since = Math.max(0, mRemoteNext - 1);
+			Uri page = LogProvider.getUri(mContext, LogProvider.PATH_ENTRIES + "?" + LogProvider.PARAM_SINCE + "=" + since
+					+ "&" + LogProvider.PARAM_LIMIT + "=" + PAGE_SIZE);
+			Cursor cursor = mResolver.query(page, null, null, null, null);
+			if (cursor == null) {
+				break;
+			}
+			fetched = 0;
+			try {
+				while (cursor.moveToNext()) {
+					long remoteSeq = cursor.getLong(0);
+					int count = cursor.getInt(5);
+					long lastTime = cursor.getLong(6);
+					if (remoteSeq < mRemoteNext) {
+						if (mirror.head() > 0) {
+							mirror.setRepeats(mirror.head() - 1, count, lastTime);
+						}
+						continue;
+					}
+					int level = cursor.getInt(1);
+					long time = cursor.getLong(2);
+					int tagId = TagDictionary.intern(cursor.getString(3));
+					Throwable tr = (cursor.getInt(7) != 0) ? new RemoteStackTrace(remoteSeq) : null;
+					long seq = mirror.add(level, time, tagId, cursor.getString(4), tr);
+					mirror.setRepeats(seq, count, lastTime);
+					mRemoteNext = remoteSeq + 1;
+					fetched++;
+				}
+			} finally {
+				cursor.close();
+			}
+		} while (fetched >= PAGE_SIZE - 1);
+
+		Runnable listener = mListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Stands in for an exception logged in the main process. Its stack trace
+	 * is fetched from the provider when it is printed, so it must not be
+	 * printed on the main thread.
+	 */
+	private final class RemoteStackTrace extends Throwable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long mRemoteSeq;
+
+		RemoteStackTrace(long remoteSeq) {
+			mRemoteSeq = remoteSeq;
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			// there is nothing useful to capture here
+			return this;
+		}
+
+		@Override
+		public void printStackTrace(PrintWriter writer) {
+			Uri uri = LogProvider.getUri(mContext, LogProvider.PATH_STACK_TRACE + "/" + mRemoteSeq);
+			Cursor cursor = mResolver.query(uri, null, null, null, null);
+			String stackTrace = null;
+			if (cursor != null) {
+				try {
+					if (cursor.moveToFirst()) {
+						stackTrace = cursor.getString(0);
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+			writer.print((stackTrace != null) ? stackTrace : "(no longer available)");
+		}
+
+	}
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+/**
+ * Trigram index over the messages in the log buffer. Every run of three
+ * characters in a message, ignoring case, is hashed to a bucket holding the
+ * sequence numbers of the entries that contain it. A search only checks the
+ * entries found in every bucket of the query's literal, rather than every
+ * entry in the buffer.
+ *
+ * <p>The index is brought up to date incrementally: {@link #update(LogBuffer)}
+ * only reads the entries appended since the previous update, and sequence
+ * numbers that have left the buffer are dropped from a bucket the next time
+ * it grows. Buckets may be shared by several trigrams, which only costs a
+ * few extra candidates to check. Sequence numbers are stored as int offsets
+ * from the oldest entry at the time the index was last rebuilt.
+ *
+ * <p>The index costs about 4 bytes per distinct trigram of every message,
+ * up to twice that while the buckets grow, which for a large buffer of
+ * long messages adds up to several times the size of the messages
+ * themselves. So the buckets are capped at {@link #MAX_POSTINGS} in all,
+ * about 4 MB; a buffer that needs more is not indexed, and searched by
+ * checking every message, until it is cleared.
+ */
+final class SearchIndex {
+
+	static final int MAX_POSTINGS = 1 << 20;
+
+	private static final int BUCKET_BITS = 14;
+	private static final int MIN_LITERAL = 3;
+
+	private LogBuffer mBuffer;
+	private long mBase;
+	private long mNext;
+	// the capacity of all buckets, in postings
+	private int mPostings;
+	private boolean mOverflowed;
+
+	// posting lists of sequence offsets, ascending, live from mStarts to mEnds
+	private final int[][] mBuckets = new int[1 << BUCKET_BITS][];
+	private final int[] mStarts = new int[1 << BUCKET_BITS];
+	private final int[] mEnds = new int[1 << BUCKET_BITS];
+
+	/**
+	 * The matches of a search, oldest first.
+	 */
+	static final class Results {
+		final long[] seqs;
+		final int count;
+		/** the first sequence number the search did not look at */
+		final long next;
+
+		Results(long[] seqs, int count, long next) {
+			this.seqs = seqs;
+			this.count = count;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Index the entries appended to the buffer since the last update.
+	 */
+	synchronized void update(LogBuffer buffer) {
+		long head = buffer.head();
+		if (buffer != mBuffer || head - mBase > Integer.MAX_VALUE) {
+			reset(buffer);
+		}
+		long seq = Math.max(mNext, buffer.tail());
+		while (seq < head) {
+			if (buffer.levelOf(seq) < 0) {
+				if (seq >= buffer.tail()) {
+					// claimed but not yet published, pick it up on the next update
+					break;
+				}
+			} else if (!mOverflowed) {
+				String text = buffer.textOf(seq);
+				if (text != null && !add((int) (seq - mBase), text)) {
+					overflow();
+				}
+			}
+			seq++;
+		}
+		mNext = seq;
+	}
+
+	/**
+	 * Find the entries of the buffer whose message matches the query.
+	 */
+	synchronized Results search(LogBuffer buffer, SearchQuery query) {
+		update(buffer);
+		int tail = (int) Math.max(0, buffer.tail() - mBase);
+		long[] results = new long[16];
+		int count = 0;
+
+		String literal = query.getLiteral();
+		if (mOverflowed || literal.length() < MIN_LITERAL) {
+			// too short for the index, or no index, check every entry
+			for (long seq = mBase + tail; seq < mNext; seq++) {
+				if (query.matches(buffer.textOf(seq))) {
+					results = append(results, count++, seq);
+				}
+			}
+			return new Results(results, count, mNext);
+		}
+
+		// the distinct buckets of the literal, with the shortest list first
+		int[] buckets = new int[literal.length() - 2];
+		int bucketCount = 0;
+		for (int i = 0; i + 2 < literal.length(); i++) {
+			int bucket = bucketOf(literal.charAt(i), literal.charAt(i + 1), literal.charAt(i + 2));
+			if (mBuckets[bucket] == null) {
+				return new Results(results, 0, mNext);
+			}
+			boolean seen = false;
+			for (int j = 0; j < bucketCount; j++) {
+				seen |= buckets[j] == bucket;
+			}
+			if (!seen) {
+				buckets[bucketCount++] = bucket;
+			}
+		}
+		for (int j = 1; j < bucketCount; j++) {
+			if (length(buckets[j]) < length(buckets[0])) {
+				int shortest = buckets[j];
+				buckets[j] = buckets[0];
+				buckets[0] = shortest;
+			}
+		}
+
+		// intersect the lists, all of which are sorted, then check each candidate
+		int[] positions = new int[bucketCount];
+		for (int j = 0; j < bucketCount; j++) {
+			positions[j] = mStarts[buckets[j]];
+		}
+		int[] first = mBuckets[buckets[0]];
+		candidates:
+		for (int k = mStarts[buckets[0]]; k < mEnds[buckets[0]]; k++) {
+			int offset = first[k];
+			if (offset < tail) {
+				continue;
+			}
+			for (int j = 1; j < bucketCount; j++) {
+				int[] list = mBuckets[buckets[j]];
+				int end = mEnds[buckets[j]];
+				int p = positions[j];
+				while (p < end && list[p] < offset) {
+					p++;
+				}
+				positions[j] = p;
+				if (p == end) {
+					break candidates;
+				}
+				if (list[p] != offset) {
+					continue candidates;
+				}
+			}
+			long seq = mBase + offset;
+			if (query.matches(buffer.textOf(seq))) {
+				results = append(results, count++, seq);
+			}
+		}
+		return new Results(results, count, mNext);
+	}
+
+	private void reset(LogBuffer buffer) {
+		mBuffer = buffer;
+		mBase = buffer.tail();
+		mNext = mBase;
+		mOverflowed = false;
+		clear();
+	}
+
+	/**
+	 * Give up on indexing the buffer and free the buckets.
+	 */
+	private void overflow() {
+		mOverflowed = true;
+		clear();
+	}
+
+	private void clear() {
+		mPostings = 0;
+		for (int i = 0; i < mBuckets.length; i++) {
+			mBuckets[i] = null;
+			mStarts[i] = 0;
+			mEnds[i] = 0;
+		}
+	}
+
+	/**
+	 * @return false if the message did not fit within the cap
+	 */
+	private boolean add(int offset, String text) {
+		int length = text.length();
+		if (length < MIN_LITERAL) {
+			return true;
+		}
+		char c0 = text.charAt(0);
+		char c1 = text.charAt(1);
+		for (int i = 2; i < length; i++) {
+			char c2 = text.charAt(i);
+			int bucket = bucketOf(c0, c1, c2);
+			int[] list = mBuckets[bucket];
+			int end = mEnds[bucket];
+			// skip repeats within the message
+			if (list == null || end == mStarts[bucket] || list[end - 1] != offset) {
+				if (list == null || end == list.length) {
+					list = grow(bucket);
+					if (list == null) {
+						return false;
+					}
+					end = mEnds[bucket];
+				}
+				list[end] = offset;
+				mEnds[bucket] = end + 1;
+			}
+			c0 = c1;
+			c1 = c2;
+		}
+		return true;
+	}
+
+	/**
+	 * Make room at the end of a bucket, dropping evicted entries first.
+	 *
+	 * @return the bucket's list, or null if it would take the buckets past
+	 *         the cap
+	 */
+	private int[] grow(int bucket) {
+		int[] list = mBuckets[bucket];
+		if (list == null) {
+			if (mPostings + 4 > MAX_POSTINGS) {
+				return null;
+			}
+			list = new int[4];
+			mPostings += 4;
+			mBuckets[bucket] = list;
+			return list;
+		}
+		long tail = mBuffer.tail() - mBase;
+		int start = mStarts[bucket];
+		int end = mEnds[bucket];
+		while (start < end && list[start] < tail) {
+			start++;
+		}
+		int live = end - start;
+		int[] target = list;
+		if (live * 2 >= list.length) {
+			if (mPostings + list.length > MAX_POSTINGS) {
+				return null;
+			}
+			target = new int[list.length * 2];
+			mPostings += list.length;
+		}
+		System.arraycopy(list, start, target, 0, live);
+		mBuckets[bucket] = target;
+		mStarts[bucket] = 0;
+		mEnds[bucket] = live;
+		return target;
+	}
+
+	private int length(int bucket) {
+		return mEnds[bucket] - mStarts[bucket];
+	}
+
+	private static int bucketOf(char c0, char c1, char c2) {
+		int h = (fold(c0) << 16) ^ (fold(c1) << 8) ^ fold(c2);
+		return (h * 0x9E3779B1) >>> (32 - BUCKET_BITS);
+	}
+
+	/**
+	 * Fold case the same way String.regionMatches does when ignoring case.
+	 */
+	private static int fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	private static long[] append(long[] array, int index, long value) {
+		if (index == array.length) {
+			long[] grown = new long[array.length * 2];
+			System.arraycopy(array, 0, grown, 0, index);
+			array = grown;
+		}
+		array[index] = value;
+		return array;
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A text search over log messages, either a case insensitive substring or a
+ * regular expression. Each query also knows a literal that every matching
+ * message must contain, which {@link SearchIndex} uses to narrow down the
+ * entries that need to be checked.
+ */
+final class SearchQuery {
+
+	private final String mText;
+	private final Pattern mPattern;
+	private final String mLiteral;
+
+	private SearchQuery(String text, Pattern pattern, String literal) {
+		mText = text;
+		mPattern = pattern;
+		mLiteral = literal;
+	}
+
+	/**
+	 * @param text the text to find, ignoring case
+	 */
+	static SearchQuery substring(String text) {
+		return new SearchQuery(text, null, text);
+	}
+
+	/**
+	 * @param regex a regular expression to find anywhere in the message
+	 * @throws PatternSyntaxException if the expression is invalid
+	 */
+	static SearchQuery regex(String regex) {
+		return new SearchQuery(regex, Pattern.compile(regex), requiredLiteral(regex));
+	}
+
+	String getText() {
+		return mText;
+	}
+
+	boolean isRegex() {
+		return mPattern != null;
+	}
+
+	/**
+	 * @return a literal contained in every matching message, possibly empty.
+	 *         Only meaningful when compared ignoring case.
+	 */
+	String getLiteral() {
+		return mLiteral;
+	}
+
+	boolean matches(String message) {
+		if (message == null) {
+			return false;
+		}
+		if (mPattern != null) {
+			return mPattern.matcher(message).find();
+		}
+		int length = mText.length();
+		for (int i = 0; i + length <= message.length(); i++) {
+			if (message.regionMatches(true, i, mText, 0, length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the longest run of plain characters that any match of the
+	 * expression must contain. This errs on the side of returning less: it
+	 * gives up on alternation and inline flags, and ignores groups and
+	 * character classes entirely.
+	 */
+	static String requiredLiteral(String regex) {
+		if (regex.indexOf('|') >= 0 || regex.indexOf("(?") >= 0 || regex.indexOf("\\Q") >= 0) {
+			return "";
+		}
+		String best = "";
+		StringBuilder run = new StringBuilder();
+		int groups = 0;
+		int length = regex.length();
+		for (int i = 0; i < length; i++) {
+			char c = regex.charAt(i);
+			int literal = -1;
+			if (c == '\\') {
+				if (i + 1 < length) {
+					char escaped = regex.charAt(++i);
+					if ("xu0pPckN".indexOf(escaped) >= 0) {
+						// escapes with arguments, not worth decoding
+						return "";
+					}
+					if (!Character.isLetterOrDigit(escaped)) {
+						literal = escaped;
+					}
+				}
+			} else if (c == '[') {
+				i = skipClass(regex, i);
+			} else if (c == '{') {
+				int end = regex.indexOf('}', i);
+				i = (end < 0) ? length - 1 : end;
+			} else if (c == '(') {
+				groups++;
+			} else if (c == ')') {
+				groups--;
+			} else if (".^$?*+}".indexOf(c) < 0) {
+				literal = c;
+			}
+
+			char next = (i + 1 < length) ? regex.charAt(i + 1) : 0;
+			boolean optional = next == '?' || next == '*' || next == '{';
+			if (literal >= 0 && groups == 0 && !optional) {
+				run.append((char) literal);
+			}
+			if (literal < 0 || groups > 0 || optional || next == '+') {
+				if (run.length() > best.length()) {
+					best = run.toString();
+				}
+				run.setLength(0);
+			}
+		}
+		return (run.length() > best.length()) ? run.toString() : best;
+	}
+
+	/**
+	 * @return the index of the ']' closing the character class at start
+	 */
+	private static int skipClass(String regex, int start) {
+		int depth = 0;
+		int i = start;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+				// a ']' right after the opening bracket is a literal
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+					i++;
+				}
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+					i++;
+				}
+			} else if (c == ']' && --depth == 0) {
+				return i;
+			}
+			i++;
+		}
+		return regex.length() - 1;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.os.Process;
+
+/**
+ * Hands log entries to the sinks. Every log call that is added to the log
+ * buffer is handed over as it is added, including repeats that the buffer
+ * collapses, and a thread of the dispatcher's own queues it for each sink
+ * that receives entries. The sinks are woken at publish time to write what
+ * has been queued.
+ *
+ * <p>Handing an entry over never waits, so the thread adding entries to
+ * the buffer is never held up by a sink, and only the dispatch thread
+ * waits for a sink with {@link LogSink#BACKPRESSURE_BLOCK}. While it does,
+ * entries wait for it in memory.
+ */
+final class SinkDispatcher implements Runnable {
+
+	private volatile SinkRunner[] mRunners = new SinkRunner[0];
+	private volatile boolean mHasEntrySinks;
+	private final LinkedBlockingQueue<LogEntry> mPending = new LinkedBlockingQueue<LogEntry>();
+	private Thread mThread;
+
+	synchronized void add(LogSink sink) {
+		if (sink.mRunner != null) {
+			return;
+		}
+		SinkRunner runner = new SinkRunner(sink);
+		sink.mRunner = runner;
+		SinkRunner[] runners = new SinkRunner[mRunners.length + 1];
+		System.arraycopy(mRunners, 0, runners, 0, mRunners.length);
+		runners[mRunners.length] = runner;
+		mRunners = runners;
+		mHasEntrySinks |= sink.receivesEntries();
+		runner.start();
+		if (sink.receivesEntries() && mThread == null) {
+			mThread = new Thread(this, "NotificationLogDispatch");
+			mThread.setDaemon(true);
+			mThread.start();
+		}
+	}
+
+	synchronized void remove(LogSink sink) {
+		SinkRunner runner = sink.mRunner;
+		if (runner == null) {
+			return;
+		}
+		sink.mRunner = null;
+		ArrayList<SinkRunner> runners = new ArrayList<SinkRunner>();
+		boolean hasEntrySinks = false;
+		for (SinkRunner r : mRunners) {
+			if (r != runner) {
+				runners.add(r);
+				hasEntrySinks |= r.getSink().receivesEntries();
+			}
+		}
+		mRunners = runners.toArray(new SinkRunner[runners.size()]);
+		mHasEntrySinks = hasEntrySinks;
+		runner.close();
+	}
+
+	/**
+	 * @return true if any sink needs entries, in which case log calls must
+	 *         be added to the buffer even when notifications are disabled
+	 */
+	boolean hasEntrySinks() {
+		return mHasEntrySinks;
+	}
+
+	/**
+	 * Hand an entry over to be queued for every sink that receives entries.
+	 * Called on the thread adding the entry to the buffer, usually the
+	 * staging drainer, and returns straight away.
+	 */
+	void offer(int level, long time, int tagId, String text, Throwable tr) {
+		LogEntry e = new LogEntry(level, time, tagId, text);
+		e.setThrowable(tr);
+		mPending.offer(e);
+	}
+
+	/**
+	 * Wake every sink to write what has been queued for it.
+	 */
+	void signal() {
+		for (SinkRunner runner : mRunners) {
+			runner.signal();
+		}
+	}
+
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		while (true) {
+			LogEntry e;
+			try {
+				e = mPending.take();
+			} catch (InterruptedException ie) {
+				return;
+			}
+			// applies each sink's backpressure policy, and waits here for a
+			// full sink with BACKPRESSURE_BLOCK
+			for (SinkRunner runner : mRunners) {
+				if (runner.getSink().receivesEntries()) {
+					runner.offer(e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * The queue and writer thread of one {@link LogSink}. Entries are offered
+ * as they are added to the log buffer, according to the sink's
+ * backpressure policy, and the thread writes them in batches each time it
+ * is signalled, no more often than the sink's flush interval unless the
+ * queue is half full.
+ */
+final class SinkRunner implements Runnable {
+
+	private static final String TAG = "NotificationLog";
+
+	private final LogSink mSink;
+	private final ArrayBlockingQueue<LogEntry> mQueue;
+	private final int mCapacity;
+	private final int mBackpressure;
+	private final long mFlushInterval;
+	private final Thread mThread;
+
+	// only used on the dispatch thread
+	private int mSampleTick;
+
+	// written while holding this, and read without it by offer()
+	private volatile boolean mSignalled;
+	// guarded by this
+	private boolean mClosed;
+
+	SinkRunner(LogSink sink) {
+		mSink = sink;
+		mCapacity = sink.getQueueCapacity();
+		mBackpressure = sink.getBackpressure();
+		mFlushInterval = sink.getFlushInterval();
+		mQueue = new ArrayBlockingQueue<LogEntry>(mCapacity);
+		mThread = new Thread(this, "NotificationLogSink-" + sink.getClass().getSimpleName());
+		mThread.setDaemon(true);
+	}
+
+	LogSink getSink() {
+		return mSink;
+	}
+
+	void start() {
+		mThread.start();
+	}
+
+	/**
+	 * Queue an entry, applying the backpressure policy. Called on the
+	 * dispatcher's thread.
+	 */
+	void offer(LogEntry e) {
+		switch (mBackpressure) {
+		case LogSink.BACKPRESSURE_BLOCK:
+			if (!mQueue.offer(e)) {
+				// make sure the writer is draining before waiting for it
+				signal();
+				try {
+					mQueue.put(e);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					mSink.countDropped(1);
+				}
+			}
+			break;
+		case LogSink.BACKPRESSURE_SAMPLE:
+			if (mQueue.size() >= mCapacity / 2 && (mSampleTick++ % LogSink.SAMPLE_RATE) != 0) {
+				mSink.countDropped(1);
+			} else if (!mQueue.offer(e)) {
+				mSink.countDropped(1);
+			}
+			break;
+		default:
+			if (!mQueue.offer(e)) {
+				mSink.countDropped(1);
+			}
+			break;
+		}
+		// write a half full queue without waiting for the next publish, so
+		// a burst only fills it if the writer cannot keep up
+		if (!mSignalled && mQueue.size() >= mCapacity / 2) {
+			signal();
+		}
+	}
+
+	/**
+	 * Wake the writer thread to write what has been queued.
+	 */
+	synchronized void signal() {
+		mSignalled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stop the writer thread once it has written the queue, then close the
+	 * sink.
+	 */
+	synchronized void close() {
+		mClosed = true;
+		notifyAll();
+	}
+
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		ArrayList<LogEntry> batch = new ArrayList<LogEntry>();
+		long lastWrite = 0;
+		boolean closed = false;
+		while (!closed) {
+			try {
+				closed = awaitWrite(lastWrite);
+			} catch (InterruptedException e) {
+				closed = true;
+			}
+			mQueue.drainTo(batch);
+			if (!batch.isEmpty() || (!closed && !mSink.receivesEntries())) {
+				write(batch);
+				batch.clear();
+			}
+			lastWrite = SystemClock.uptimeMillis();
+		}
+		mSink.close();
+	}
+
+	/**
+	 * Wait until signalled, then until the flush interval since the last
+	 * write has passed or the queue is half full.
+	 *
+	 * @return true if the runner was closed
+	 */
+	private synchronized boolean awaitWrite(long lastWrite) throws InterruptedException {
+		while (!mSignalled && !mClosed) {
+			wait();
+		}
+		long delay;
+		while (!mClosed && mQueue.size() < mCapacity / 2
+				&& (delay = lastWrite + mFlushInterval - SystemClock.uptimeMillis()) > 0) {
+			wait(delay);
+		}
+		mSignalled = false;
+		return mClosed;
+	}
+
+	private void write(List<LogEntry> batch) {
+		try {
+			mSink.write(batch);
+			mSink.flush();
+		} catch (IOException e) {
+			android.util.Log.w(TAG, "sink write failed", e);
+		} catch (RuntimeException e) {
+			// a broken sink must not take the thread down with it
+			android.util.Log.w(TAG, "sink write failed", e);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.HashSet;
+
+/**
+ * Immutable level threshold and tag allow-list that is checked before an
+ * entry is created. Instances are swapped as a whole, so readers never need
+ * to lock.
+ */
+final class SourceFilter {
+
+	private final int mMinLevel;
+	private final HashSet<String> mTags;
+
+	/**
+	 * @param minLevel the lowest level to keep
+	 * @param tags the tags to keep, or null or empty to keep all tags
+	 */
+	SourceFilter(int minLevel, String[] tags) {
+		mMinLevel = minLevel;
+		if (tags != null && tags.length > 0) {
+			mTags = new HashSet<String>(tags.length * 2);
+			for (String tag : tags) {
+				mTags.add(tag);
+			}
+		} else {
+			mTags = null;
+		}
+	}
+
+	boolean accept(int level, String tag) {
+		return level >= mMinLevel && (mTags == null || mTags.contains(tag));
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small ring of log entries written by one thread and read by the
+ * {@link StagingDrainer}. Neither side takes a lock or retries a CAS: the
+ * owner fills in a slot and then publishes its new head, the drainer reads
+ * up to that head and then publishes its new tail, and each side only
+ * reads the other's counter when it appears to have run out of room or
+ * entries.
+ */
+final class StagingBuffer {
+
+	static final int CAPACITY = 512;
+	private static final int MASK = CAPACITY - 1;
+
+	private final byte[] mLevels = new byte[CAPACITY];
+	private final long[] mTimes = new long[CAPACITY];
+	private final int[] mTagIds = new int[CAPACITY];
+	private final String[] mTexts = new String[CAPACITY];
+	private final Throwable[] mThrowables = new Throwable[CAPACITY];
+
+	// only written by the owner
+	private final AtomicLong mHead = new AtomicLong();
+	// only written by the drainer
+	private final AtomicLong mTail = new AtomicLong();
+
+	// the owner's view of the counters
+	private long mOwnerHead;
+	private long mOwnerTail;
+
+	private final WeakReference<Thread> mOwner;
+
+	StagingBuffer(Thread owner) {
+		mOwner = new WeakReference<Thread>(owner);
+	}
+
+	/**
+	 * Stage an entry. Only called by the owning thread.
+	 *
+	 * @return false if the ring is full
+	 */
+	boolean offer(int level, long time, int tagId, String text, Throwable tr) {
+		long head = mOwnerHead;
+		if (head - mOwnerTail >= CAPACITY) {
+			mOwnerTail = mTail.get();
+			if (head - mOwnerTail >= CAPACITY) {
+				return false;
+			}
+		}
+		int i = (int) head & MASK;
+		mLevels[i] = (byte) level;
+		mTimes[i] = time;
+		mTagIds[i] = tagId;
+		mTexts[i] = text;
+		mThrowables[i] = tr;
+		mOwnerHead = head + 1;
+		mHead.set(head + 1);
+		return true;
+	}
+
+	/**
+	 * @return the sequence number after the newest published entry
+	 */
+	long head() {
+		return mHead.get();
+	}
+
+	/**
+	 * @return the sequence number of the oldest entry not yet drained
+	 */
+	long tail() {
+		return mTail.get();
+	}
+
+	int levelAt(long seq) {
+		return mLevels[(int) seq & MASK];
+	}
+
+	long timeAt(long seq) {
+		return mTimes[(int) seq & MASK];
+	}
+
+	int tagIdAt(long seq) {
+		return mTagIds[(int) seq & MASK];
+	}
+
+	String textAt(long seq) {
+		return mTexts[(int) seq & MASK];
+	}
+
+	Throwable throwableAt(long seq) {
+		return mThrowables[(int) seq & MASK];
+	}
+
+	/**
+	 * Hand the entries before the sequence number back to the owner.
+	 * Only called by the drainer.
+	 */
+	void release(long seq) {
+		for (long s = mTail.get(); s < seq; s++) {
+			int i = (int) s & MASK;
+			mTexts[i] = null;
+			mThrowables[i] = null;
+		}
+		mTail.set(seq);
+	}
+
+	/**
+	 * @return true if the owning thread has finished
+	 */
+	boolean isOrphaned() {
+		Thread owner = mOwner.get();
+		return owner == null || !owner.isAlive();
+	}
+
+}
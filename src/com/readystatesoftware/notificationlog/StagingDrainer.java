@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Process;
+
+/**
+ * Lets logging threads add entries without touching any memory shared
+ * with other logging threads. Each thread stages its entries in a
+ * {@link StagingBuffer} of its own, and a background thread merges the
+ * staged entries of all threads into the log buffer in timestamp order
+ * every few milliseconds while there is logging, and sleeps otherwise.
+ *
+ * <p>A thread that fills its staging buffer before the drainer gets to it
+ * drains all of them itself, which keeps each thread's entries in order
+ * and nothing is lost, but it is the only time a logging thread waits.
+ */
+final class StagingDrainer implements Runnable {
+
+	/**
+	 * Receives the merged entries on the draining thread.
+	 */
+	interface Target {
+
+		void append(int level, long time, int tagId, String text, Throwable tr);
+
+		/**
+		 * Called after a drain that appended at least one entry, once other
+		 * threads may drain again.
+		 */
+		void drained();
+
+	}
+
+	private static final long INTERVAL_NANOS = 5 * 1000 * 1000;
+	// empty drains in a row before the thread sleeps until woken
+	private static final int IDLE_DRAINS = 20;
+
+	private final Target mTarget;
+	private final Object mRegistryLock = new Object();
+	private volatile StagingBuffer[] mBuffers = new StagingBuffer[0];
+	private volatile Thread mThread;
+	private volatile boolean mIdle;
+
+	private final ThreadLocal<StagingBuffer> mLocal = new ThreadLocal<StagingBuffer>() {
+		@Override
+		protected StagingBuffer initialValue() {
+			StagingBuffer buffer = new StagingBuffer(Thread.currentThread());
+			synchronized (mRegistryLock) {
+				StagingBuffer[] buffers = new StagingBuffer[mBuffers.length + 1];
+				System.arraycopy(mBuffers, 0, buffers, 0, mBuffers.length);
+				buffers[mBuffers.length] = buffer;
+				mBuffers = buffers;
+			}
+			return buffer;
+		}
+	};
+
+	// only used while draining
+	private long[] mHeads = new long[0];
+	private long[] mNext = new long[0];
+
+	StagingDrainer(Target target) {
+		mTarget = target;
+	}
+
+	synchronized void start() {
+		if (mThread == null) {
+			Thread thread = new Thread(this, "NotificationLogDrain");
+			thread.setDaemon(true);
+			mThread = thread;
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stage an entry from the calling thread.
+	 *
+	 * @return false if the drainer is not running, in which case the entry
+	 *         must be added some other way
+	 */
+	boolean offer(int level, long time, int tagId, String text, Throwable tr) {
+		Thread thread = mThread;
+		if (thread == null) {
+			return false;
+		}
+		StagingBuffer buffer = mLocal.get();
+		if (!buffer.offer(level, time, tagId, text, tr)) {
+			// the drainer is behind
+			drain();
+			if (!buffer.offer(level, time, tagId, text, tr)) {
+				return false;
+			}
+		}
+		if (mIdle) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+
+	/**
+	 * Merge everything staged so far into the target. May be called from
+	 * any thread; drains are serialized.
+	 *
+	 * @return the number of entries appended
+	 */
+	int drain() {
+		int count = merge();
+		if (count > 0) {
+			mTarget.drained();
+		}
+		return count;
+	}
+
+	private synchronized int merge() {
+		StagingBuffer[] buffers = mBuffers;
+		int n = buffers.length;
+		if (mHeads.length < n) {
+			mHeads = new long[n];
+			mNext = new long[n];
+		}
+		for (int i = 0; i < n; i++) {
+			mNext[i] = buffers[i].tail();
+			mHeads[i] = buffers[i].head();
+		}
+
+		int count = 0;
+		while (true) {
+			int oldest = -1;
+			long oldestTime = Long.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				if (mNext[i] < mHeads[i]) {
+					long time = buffers[i].timeAt(mNext[i]);
+					if (oldest < 0 || time < oldestTime) {
+						oldest = i;
+						oldestTime = time;
+					}
+				}
+			}
+			if (oldest < 0) {
+				break;
+			}
+			StagingBuffer buffer = buffers[oldest];
+			long seq = mNext[oldest]++;
+			mTarget.append(buffer.levelAt(seq), buffer.timeAt(seq), buffer.tagIdAt(seq),
+					buffer.textAt(seq), buffer.throwableAt(seq));
+			count++;
+		}
+
+		boolean orphans = false;
+		for (int i = 0; i < n; i++) {
+			if (mNext[i] > buffers[i].tail()) {
+				buffers[i].release(mNext[i]);
+			}
+			orphans |= buffers[i].isOrphaned();
+		}
+		if (orphans) {
+			removeOrphans();
+		}
+		return count;
+	}
+
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		int idle = 0;
+		while (true) {
+			if (drain() > 0) {
+				idle = 0;
+			} else if (++idle >= IDLE_DRAINS) {
+				// tell the logging threads to wake this one, then check once
+				// more for anything staged before they could see the flag
+				mIdle = true;
+				if (!hasStaged()) {
+					LockSupport.park(this);
+				}
+				mIdle = false;
+				idle = 0;
+				continue;
+			}
+			LockSupport.parkNanos(this, INTERVAL_NANOS);
+		}
+	}
+
+	private boolean hasStaged() {
+		for (StagingBuffer buffer : mBuffers) {
+			if (buffer.tail() < buffer.head()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Forget the drained buffers of threads that have finished.
+	 */
+	private void removeOrphans() {
+		synchronized (mRegistryLock) {
+			int kept = 0;
+			StagingBuffer[] buffers = new StagingBuffer[mBuffers.length];
+			for (StagingBuffer buffer : mBuffers) {
+				if (!buffer.isOrphaned() || buffer.tail() < buffer.head()) {
+					buffers[kept++] = buffer;
+				}
+			}
+			StagingBuffer[] trimmed = new StagingBuffer[kept];
+			System.arraycopy(buffers, 0, trimmed, 0, kept);
+			mBuffers = trimmed;
+		}
+	}
+
+}
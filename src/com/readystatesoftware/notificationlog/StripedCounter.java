@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment at once without contending on
+ * a single memory location. Each thread adds to one of several cells,
+ * chosen by its id, and the cells are spaced a cache line apart; reading
+ * the total sums the cells.
+ */
+final class StripedCounter {
+
+	// longs between two cells, so that no two cells share a cache line
+	private static final int PADDING = 8;
+	private static final int STRIPES = stripes();
+
+	private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Add one to the counter.
+	 *
+	 * @return the new value of the calling thread's cell, which is a cheap
+	 *         way of picking one call in so many
+	 */
+	long increment() {
+		return mCells.incrementAndGet(cell());
+	}
+
+	void add(long delta) {
+		mCells.addAndGet(cell(), delta);
+	}
+
+	/**
+	 * @return the total; not an atomic snapshot if the counter is being
+	 *         incremented meanwhile
+	 */
+	long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += mCells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	void reset() {
+		for (int i = 0; i < STRIPES; i++) {
+			mCells.set(i * PADDING, 0);
+		}
+	}
+
+	private static int cell() {
+		long id = Thread.currentThread().getId();
+		return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1)) * PADDING;
+	}
+
+	private static int stripes() {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < cpus * 2 && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+}
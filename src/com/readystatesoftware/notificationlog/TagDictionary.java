@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide dictionary that assigns each distinct tag a small integer id
+ * the first time it is seen. Entries store the id, so filtering by tag is an
+ * int comparison. Lookups of known tags never lock; only adding a new tag is
+ * synchronized.
+ */
+final class TagDictionary {
+
+	private static final String NULL_TAG = "null";
+
+	private static final ConcurrentHashMap<String, Integer> sIds = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] sNames = new String[32];
+	private static volatile int sSize;
+
+	private TagDictionary() {
+	}
+
+	/**
+	 * @return the id of the tag, adding it to the dictionary if needed
+	 */
+	static int intern(String tag) {
+		if (tag == null) {
+			tag = NULL_TAG;
+		}
+		Integer id = sIds.get(tag);
+		return (id != null) ? id : add(tag);
+	}
+
+	/**
+	 * @return the id of the tag, or -1 if it has never been seen
+	 */
+	static int lookup(String tag) {
+		Integer id = sIds.get(tag == null ? NULL_TAG : tag);
+		return (id != null) ? id : -1;
+	}
+
+	static String nameOf(int id) {
+		return sNames[id];
+	}
+
+	static int size() {
+		return sSize;
+	}
+
+	/**
+	 * @return all tags in the order they were first seen
+	 */
+	static ArrayList<String> names() {
+		int size = sSize;
+		String[] names = sNames;
+		ArrayList<String> list = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(names[i]);
+		}
+		return list;
+	}
+
+	private static synchronized int add(String tag) {
+		Integer id = sIds.get(tag);
+		if (id != null) {
+			return id;
+		}
+		int next = sSize;
+		String[] names = sNames;
+		if (next == names.length) {
+			String[] grown = new String[names.length * 2];
+			System.arraycopy(names, 0, grown, 0, names.length);
+			names = grown;
+		}
+		names[next] = tag;
+		// publish the name before the id can be handed out
+		sNames = names;
+		sSize = next + 1;
+		sIds.put(tag, next);
+		return next;
+	}
+
+}
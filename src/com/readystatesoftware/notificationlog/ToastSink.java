@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013 readyState Software Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.readystatesoftware.notificationlog;
+
+import java.util.List;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.widget.Toast;
+
+/**
+ * Shows logged messages as a toast. Toasts can only be shown on the main
+ * thread, so the newest message is handed to a single main looper handler;
+ * messages that arrive before it runs are only counted. During a burst of
+ * messages, until the toast would have gone off screen, one toast is
+ * reused to show the newest message and how many others there were.
+ */
+final class ToastSink extends LogSink implements Handler.Callback {
+
+	private static final int MSG_SHOW = 1;
+	private static final int QUEUE_CAPACITY = 64;
+	// roughly how long a Toast.LENGTH_SHORT toast stays on screen
+	private static final long BURST_MILLIS = 2000;
+
+	private final Context mContext;
+	private final LogMetrics mMetrics;
+	private final Handler mHandler;
+
+	// only used on the sink thread
+	private long mLastDropped;
+
+	// handed from the sink thread to the main thread, guarded by this
+	private String mNewest;
+	private int mPending;
+
+	// only used on the main thread
+	private Toast mToast;
+	private int mBurst;
+	private long mBurstEnd;
+
+	ToastSink(Context context, LogMetrics metrics) {
+		mContext = context;
+		mMetrics = metrics;
+		mHandler = new Handler(Looper.getMainLooper(), this);
+		// only the newest message is shown, the rest are just counted
+		setQueueCapacity(QUEUE_CAPACITY);
+	}
+
+	@Override
+	protected void write(List<LogEntry> entries) {
+		long dropped = getDroppedCount();
+		int count = entries.size() + (int) (dropped - mLastDropped);
+		mLastDropped = dropped;
+		if (entries.isEmpty()) {
+			return;
+		}
+		boolean post;
+		synchronized (this) {
+			mNewest = entries.get(entries.size() - 1).getText();
+			post = mPending == 0;
+			mPending += count;
+		}
+		if (post) {
+			mHandler.sendEmptyMessage(MSG_SHOW);
+		}
+	}
+
+	public boolean handleMessage(Message msg) {
+		if (msg.what != MSG_SHOW) {
+			return false;
+		}
+		String text;
+		int count;
+		synchronized (this) {
+			text = mNewest;
+			count = mPending;
+			mNewest = null;
+			mPending = 0;
+		}
+		if (text == null) {
+			return true;
+		}
+
+		long now = SystemClock.uptimeMillis();
+		if (now > mBurstEnd) {
+			mBurst = 0;
+		}
+		mBurst += count;
+		mBurstEnd = now + BURST_MILLIS;
+		if (mBurst > 1) {
+			text = text + "\n+" + (mBurst - 1) + " more";
+		}
+		if (mToast == null) {
+			mToast = Toast.makeText(mContext, text, Toast.LENGTH_SHORT);
+		} else {
+			mToast.setText(text);
+		}
+		mToast.show();
+		mMetrics.countToast();
+		return true;
+	}
+
+}